@@ -0,0 +1,60 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.noproxy.gradle.test.api
+
+import com.github.noproxy.gradle.test.api.template.IntegrateSpecification
+
+class RerunReportSpec extends IntegrateSpecification {
+    def setup() {
+        buildFile """
+plugins {
+    id 'java'
+}
+"""
+        newFile('src/main/java/org/example/Example.java') << "package org.example; public class Example {}"
+    }
+
+    def "second build is up-to-date"() {
+        when:
+        def report = runTwice 'compileJava'
+
+        then:
+        report.missedTasks.empty
+        report.assertAllReused()
+    }
+
+    def "changed input is reported"() {
+        when:
+        def report = runTwice({
+            file('src/main/java/org/example/Example.java').text = "package org.example; public class Example { int changed; }"
+        }, 'compileJava')
+
+        then:
+        report.missedTasks == [':compileJava']
+    }
+
+    def "clean build is loaded from the build cache"() {
+        when:
+        def report = runWithCleanCacheHit 'compileJava'
+
+        then:
+        report.missedTasks.empty
+        report.assertAllReused()
+        taskFromCached(':compileJava')
+        !buildTasks*.path.contains(':clean')
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.noproxy.gradle.test.internal
+
+import spock.lang.Specification
+
+import java.util.concurrent.ForkJoinPool
+import java.util.concurrent.ForkJoinTask
+
+class CloseSchedulerSpec extends Specification {
+    CloseScheduler scheduler = new CloseScheduler()
+    List<String> closed = Collections.synchronizedList([])
+
+    Closeable closeable(String name, Closure action = {}) {
+        return {
+            action()
+            closed << name
+        } as Closeable
+    }
+
+    def "closes every closeable after its dependencies"() {
+        given:
+        def leaf = closeable('leaf')
+        def middle = closeable('middle')
+        def root = closeable('root')
+        scheduler.add(root, middle)
+        scheduler.add(middle, leaf)
+        scheduler.add(leaf)
+
+        when:
+        scheduler.closeAll()
+
+        then:
+        closed == ['leaf', 'middle', 'root']
+    }
+
+    def "dependencies outside of the scheduler are ignored"() {
+        given:
+        def outside = closeable('outside')
+        scheduler.add(closeable('inside'), outside)
+
+        when:
+        scheduler.closeAll()
+
+        then:
+        closed == ['inside']
+    }
+
+    def "rejects closeables depending on each other"() {
+        given:
+        def first = closeable('first')
+        def second = closeable('second')
+        scheduler.add(first, second)
+        scheduler.add(second, first)
+
+        when:
+        scheduler.closeAll()
+
+        then:
+        def e = thrown(IllegalStateException)
+        e.message.startsWith('closeables depend on each other')
+        closed.empty
+    }
+
+    def "closes the others when some fail and reports all failures"() {
+        given:
+        def firstFailure = new IOException('first')
+        def secondFailure = new IllegalStateException('second')
+        def failing = closeable('failing') { throw firstFailure }
+        scheduler.add(failing)
+        scheduler.add(closeable('also failing') { throw secondFailure })
+        scheduler.add(closeable('dependent'), failing)
+        scheduler.add(closeable('independent'))
+
+        when:
+        scheduler.closeAll()
+
+        then:
+        def e = thrown(CloseScheduler.CloseFailedException)
+        ([e.cause] + e.suppressed.toList()) as Set == [firstFailure, secondFailure] as Set
+        closed as Set == ['dependent', 'independent'] as Set
+    }
+
+    def "closes in its own pool when called from the common pool"() {
+        given:
+        def pools = Collections.synchronizedList([])
+        scheduler.add(closeable('first') { pools << ForkJoinTask.pool })
+        scheduler.add(closeable('second') { pools << ForkJoinTask.pool })
+
+        when:
+        ForkJoinPool.commonPool().submit({ scheduler.closeAll() } as Runnable).get()
+
+        then:
+        pools.size() == 2
+        pools.every { it != null && it != ForkJoinPool.commonPool() }
+    }
+}
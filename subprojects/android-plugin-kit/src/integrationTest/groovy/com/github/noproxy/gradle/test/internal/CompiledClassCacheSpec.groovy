@@ -0,0 +1,137 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.noproxy.gradle.test.internal
+
+import org.junit.Rule
+import spock.lang.Specification
+
+import java.nio.file.Files
+import java.nio.file.attribute.FileTime
+
+class CompiledClassCacheSpec extends Specification {
+    static final Map<String, String> SOURCES = ['com.example.App': 'package com.example; public class App {}']
+    static final Map<String, byte[]> CLASSES = ['com.example.App': [1, 2, 3] as byte[]]
+    @Rule
+    TestNameTestDirectoryProvider testDirectoryProvider = new TestNameTestDirectoryProvider()
+    DefaultFileIntegrator integrator = new DefaultFileIntegrator(testDirectoryProvider.root)
+
+    // fingerprints and input states are computed once per instance, a new instance stands for a new JVM
+    CompiledClassCache newCache(long maxSizeBytes = 1024 * 1024) {
+        return new CompiledClassCache(integrator.file('cache'), maxSizeBytes, true)
+    }
+
+    static List<String> classpath(File... entries) {
+        return ['-classpath', entries*.absolutePath.join(File.pathSeparator)]
+    }
+
+    def "a changed classpath jar changes the key"() {
+        given:
+        def jar = integrator.newFile('libs/lib.jar')
+        jar.text = 'first'
+        def options = classpath(jar)
+        def key = newCache().keyOf(SOURCES, [:], options)
+
+        expect:
+        newCache().keyOf(SOURCES, [:], options) == key
+
+        when:
+        jar.text = 'changed size'
+
+        then:
+        newCache().keyOf(SOURCES, [:], options) != key
+
+        when:
+        jar.text = 'first'
+        jar.lastModified = jar.lastModified() - 10_000
+
+        then:
+        newCache().keyOf(SOURCES, [:], options) != key
+    }
+
+    def "the key covers the sources, the stubs on the classpath and the options"() {
+        given:
+        def cache = newCache()
+        def key = cache.keyOf(SOURCES, ['com.example.Stub': [1] as byte[]], ['-g'])
+
+        expect:
+        cache.keyOf(SOURCES, ['com.example.Stub': [1] as byte[]], ['-g']) == key
+        cache.keyOf(['com.example.App': 'package com.example; public class App { int changed; }'],
+                ['com.example.Stub': [1] as byte[]], ['-g']) != key
+        cache.keyOf(SOURCES, ['com.example.Stub': [2] as byte[]], ['-g']) != key
+        cache.keyOf(SOURCES, [:], ['-g']) != key
+        cache.keyOf(SOURCES, ['com.example.Stub': [1] as byte[]], ['-g:none']) != key
+    }
+
+    def "a changed file read from a classpath directory forces a recompile"() {
+        given:
+        def classes = integrator.newDir('classes')
+        def read = integrator.newFile('classes/com/example/Base.class')
+        read.bytes = [1] as byte[]
+        def key = newCache().keyOf(SOURCES, [:], classpath(classes))
+        newCache().put(key, CLASSES, [read, read.parentFile])
+
+        expect:
+        newCache().keyOf(SOURCES, [:], classpath(classes)) == key
+        newCache().get(key)['com.example.App'] == CLASSES['com.example.App']
+
+        when:
+        read.bytes = [2] as byte[]
+
+        then:
+        newCache().get(key) == null
+    }
+
+    def "a file added to a listed package directory forces a recompile"() {
+        given:
+        def packageDir = integrator.newDir('classes/com/example')
+        integrator.newFile('classes/com/example/Base.class')
+        def cache = newCache()
+        def key = cache.keyOf(SOURCES, [:], classpath(integrator.file('classes')))
+        cache.put(key, CLASSES, [packageDir])
+
+        expect:
+        newCache().get(key) != null
+
+        when:
+        integrator.newFile('classes/com/example/App.class')
+
+        then:
+        newCache().get(key) == null
+    }
+
+    def "the least recently used entries are evicted"() {
+        given:
+        def entry = new byte[1000]
+        def cache = newCache(2500)
+        cache.put('first', ['First': entry], [])
+        cache.put('second', ['Second': entry], [])
+        def now = System.currentTimeMillis()
+        Files.setLastModifiedTime(integrator.file('cache/first.classes').toPath(), FileTime.fromMillis(now - 20_000))
+        Files.setLastModifiedTime(integrator.file('cache/second.classes').toPath(), FileTime.fromMillis(now - 10_000))
+
+        when:
+        // a hit makes the oldest entry the most recently used
+        cache.get('first')
+        cache.put('third', ['Third': entry], [])
+
+        then:
+        cache.get('first') != null
+        cache.get('second') == null
+        cache.get('third') != null
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.noproxy.gradle.test.internal
+
+import org.junit.Rule
+import spock.lang.Specification
+
+import java.util.zip.ZipEntry
+import java.util.zip.ZipOutputStream
+
+class RepositorySnapshotSpec extends Specification {
+    @Rule
+    TestNameTestDirectoryProvider testDirectoryProvider = new TestNameTestDirectoryProvider()
+    DefaultFileIntegrator integrator = new DefaultFileIntegrator(testDirectoryProvider.root)
+
+    File repository(String name, Map<String, String> files) {
+        def root = integrator.newDir(name)
+        files.each { path, text -> new DefaultFileIntegrator(root).newFile(path).text = text }
+        return root
+    }
+
+    File jar(File repository, String path, long time, Map<String, String> entries) {
+        def jar = new DefaultFileIntegrator(repository).newFile(path)
+        new ZipOutputStream(jar.newOutputStream()).withCloseable { zip ->
+            entries.each { name, text ->
+                def entry = new ZipEntry(name)
+                entry.time = time
+                zip.putNextEntry(entry)
+                zip.write(text.bytes)
+                zip.closeEntry()
+            }
+        }
+        return jar
+    }
+
+    RepositorySnapshot snapshot(File root) {
+        return RepositorySnapshot.of(root, RepositorySnapshot.DEFAULT_IGNORES)
+    }
+
+    static Map<String, String> modules(Map<String, String> overrides = [:]) {
+        return [
+                'com/example/lib/1.0/lib-1.0.pom'    : '<project>lib 1.0</project>',
+                'com/example/lib/2.0/lib-2.0.pom'    : '<project>lib 2.0</project>',
+                'com/example/other/1.0/other-1.0.pom': '<project>other 1.0</project>',
+                'org/example/tool/1.0/tool-1.0.pom'  : '<project>tool 1.0</project>',
+        ] + overrides
+    }
+
+    def "only the differing subtree is reported"() {
+        given:
+        def expected = snapshot(repository('expected', modules()))
+        def actual = snapshot(repository('actual', modules(
+                'com/example/lib/2.0/lib-2.0.pom': '<project>lib 2.0 changed</project>')))
+
+        expect:
+        actual.getHash('org/example/') == expected.getHash('org/example/')
+        actual.getHash('com/example/other/') == expected.getHash('com/example/other/')
+        actual.getHash('com/example/lib/1.0/') == expected.getHash('com/example/lib/1.0/')
+        actual.getHash('com/example/lib/2.0/') != expected.getHash('com/example/lib/2.0/')
+        actual.rootHash != expected.rootHash
+        actual.diff(expected) == ['changed com/example/lib/2.0/lib-2.0.pom']
+    }
+
+    def "added and removed subtrees are reported as a whole"() {
+        given:
+        def expected = snapshot(repository('expected', modules()))
+        def actualFiles = modules() + ['com/example/added/1.0/added-1.0.pom': '<project/>']
+        actualFiles.remove('org/example/tool/1.0/tool-1.0.pom')
+        def actual = snapshot(repository('actual', actualFiles))
+
+        expect:
+        actual.diff(expected) == ['added com/example/added/', 'removed org/']
+        actual.children('com/example/') == ['com/example/added/', 'com/example/lib/', 'com/example/other/']
+    }
+
+    def "snapshots read back from a file compare equal"() {
+        given:
+        def written = snapshot(repository('repository', modules()))
+        def file = integrator.file('snapshot.txt')
+
+        when:
+        written.write(file)
+        def read = RepositorySnapshot.read(file)
+
+        then:
+        read.rootHash == written.rootHash
+        read.diff(written).empty
+    }
+
+    def "metadata timestamps, build ids, artifact digests and checksum files are ignored"() {
+        given:
+        def first = repository('first', [
+                'com/example/lib/maven-metadata.xml'     : '<metadata><lastUpdated>20190101000000</lastUpdated></metadata>',
+                'com/example/lib/1.0/lib-1.0.module'     : '{"createdBy": {"gradle": {"buildId": "first"}}, ' +
+                        '"files": [{"name": "lib-1.0.jar", "size": 10, "sha1": "aaa", "md5": "bbb"}]}',
+                'com/example/lib/1.0/lib-1.0.pom'        : '<project/>',
+                'com/example/lib/1.0/lib-1.0.pom.sha1'   : 'aaa',
+                'com/example/lib/1.0/lib-1.0.pom.sha512' : 'bbb',
+        ])
+        def second = repository('second', [
+                'com/example/lib/maven-metadata.xml'     : '<metadata><lastUpdated>20200202000000</lastUpdated></metadata>',
+                'com/example/lib/1.0/lib-1.0.module'     : '{"createdBy": {"gradle": {"buildId": "second"}}, ' +
+                        '"files": [{"name": "lib-1.0.jar", "size": 20, "sha1": "ccc", "md5": "ddd"}]}',
+                'com/example/lib/1.0/lib-1.0.pom'        : '<project/>',
+                'com/example/lib/1.0/lib-1.0.pom.sha1'   : 'ccc',
+        ])
+
+        expect:
+        snapshot(second).diff(snapshot(first)).empty
+        snapshot(second).getHash('com/example/lib/1.0/lib-1.0.pom.sha1') == null
+    }
+
+    def "metadata content other than the timestamp is compared"() {
+        given:
+        def first = repository('first', ['lib/maven-metadata.xml': '<metadata><version>1.0</version><lastUpdated>1</lastUpdated></metadata>'])
+        def second = repository('second', ['lib/maven-metadata.xml': '<metadata><version>2.0</version><lastUpdated>1</lastUpdated></metadata>'])
+
+        expect:
+        snapshot(second).diff(snapshot(first)) == ['changed lib/maven-metadata.xml']
+    }
+
+    def "archives are compared by the names and content of their entries"() {
+        given:
+        def first = integrator.newDir('first')
+        def second = integrator.newDir('second')
+        def third = integrator.newDir('third')
+        jar(first, 'lib/1.0/lib-1.0.jar', 0, ['b.txt': 'b', 'a.txt': 'a'])
+        // written at another time and in another order
+        jar(second, 'lib/1.0/lib-1.0.jar', System.currentTimeMillis(), ['a.txt': 'a', 'b.txt': 'b'])
+        jar(third, 'lib/1.0/lib-1.0.jar', 0, ['a.txt': 'a', 'b.txt': 'changed'])
+
+        expect:
+        snapshot(second).diff(snapshot(first)).empty
+        snapshot(third).diff(snapshot(first)) == ['changed lib/1.0/lib-1.0.jar']
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.noproxy.gradle.test.internal
+
+import org.junit.Rule
+import org.junit.contrib.java.lang.system.RestoreSystemProperties
+import spock.lang.Specification
+
+import java.util.zip.ZipFile
+
+class StubClasspathSpec extends Specification {
+    @Rule
+    TestNameTestDirectoryProvider testDirectoryProvider = new TestNameTestDirectoryProvider()
+    @Rule
+    RestoreSystemProperties restoreSystemProperties = new RestoreSystemProperties()
+    DefaultFileIntegrator integrator = new DefaultFileIntegrator(testDirectoryProvider.root)
+
+    def setup() {
+        // the sources below only use the stubs, android.jar may as well be missing
+        if (System.getProperty('android.home') == null) {
+            System.setProperty('android.home', testDirectoryProvider.root.absolutePath)
+        }
+    }
+
+    static List<String> entriesOf(File jar) {
+        return new ZipFile(jar).withCloseable { it.entries().toList()*.name.sort() }
+    }
+
+    def "sources compile against the stub classes of a classpath jar"() {
+        given:
+        def api = Integrators.jar(integrator.file('api.jar'), integrator)
+        api.stubClass('com.example.api.Greeter') {
+            method('greet', 'java.lang.String', 'java.lang.String')
+        }
+        def app = Integrators.jar(integrator.file('app.jar'), integrator)
+        app.classpath(api)
+        app.newClass('com.example.app.App', '''
+package com.example.app;
+
+import com.example.api.Greeter;
+
+public class App {
+    public String run(Greeter greeter) {
+        return greeter.greet("app");
+    }
+}
+''')
+
+        when:
+        integrator.close()
+
+        then:
+        entriesOf(integrator.file('api.jar')) == ['com/example/api/Greeter.class']
+        // the stubs stay in their own jar
+        entriesOf(integrator.file('app.jar')) == ['com/example/app/App.class']
+        def jars = [integrator.file('app.jar'), integrator.file('api.jar')]
+        def loader = new URLClassLoader(jars*.toURI()*.toURL() as URL[], (ClassLoader) null)
+        loader.loadClass('com.example.app.App').getMethod('run', loader.loadClass('com.example.api.Greeter')).returnType == String
+    }
+
+    def "sources do not see the stubs of a jar which is not on their classpath"() {
+        given:
+        def api = Integrators.jar(integrator.file('api.jar'), integrator)
+        api.stubClass('com.example.api.Greeter')
+        def app = Integrators.jar(integrator.file('app.jar'), integrator)
+        app.newClass('com.example.app.App', 'package com.example.app; public class App { com.example.api.Greeter greeter; }')
+
+        when:
+        integrator.close()
+
+        then:
+        def e = thrown(CloseScheduler.CloseFailedException)
+        e.cause.message.contains('package com.example.api does not exist')
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.noproxy.gradle.test.internal
+
+import com.github.noproxy.gradle.test.api.BuildRunner
+import org.gradle.testkit.runner.BuildTask
+import org.gradle.testkit.runner.TaskOutcome
+import spock.lang.Specification
+import spock.lang.Unroll
+
+import static org.gradle.testkit.runner.TaskOutcome.FROM_CACHE
+import static org.gradle.testkit.runner.TaskOutcome.SUCCESS
+import static org.gradle.testkit.runner.TaskOutcome.UP_TO_DATE
+
+class TaskOutcomeReviewTest extends Specification {
+    List<BuildTask> tasks = [
+            task(':build', SUCCESS),
+            task(':app:build', UP_TO_DATE),
+            task(':lib:core:compileJava', FROM_CACHE),
+    ]
+    BuildRunner runner = [getBuildTasks: { tasks }] as BuildRunner
+    TaskOutcomeReview review = new TaskOutcomeReview(runner)
+
+    static BuildTask task(String path, TaskOutcome outcome) {
+        return [getPath: { path }, getOutcome: { outcome }] as BuildTask
+    }
+
+    @Unroll
+    def "'#path' matches #matched"() {
+        expect:
+        review.taskRun(path) == matched.contains(':build')
+        review.taskUpToDate(path) == matched.contains(':app:build')
+        review.taskFromCached(path) == matched.contains(':lib:core:compileJava')
+        review.taskNotExecuted(path) == matched.empty
+
+        where:
+        path                    | matched
+        ':build'                | [':build']
+        ':app:build'            | [':app:build']
+        'build'                 | [':build', ':app:build']
+        'app:build'             | [':app:build']
+        ':lib:core:compileJava' | [':lib:core:compileJava']
+        'core:compileJava'      | [':lib:core:compileJava']
+        'compileJava'           | [':lib:core:compileJava']
+        // absolute paths are never matched as suffixes, partial names never match
+        ':compileJava'          | []
+        ':core:compileJava'     | []
+        'uild'                  | []
+        'Java'                  | []
+        ':app'                  | []
+    }
+
+    def "outcomes follow the last build"() {
+        expect:
+        review.taskRun(':build')
+
+        when:
+        tasks = [task(':build', UP_TO_DATE)]
+
+        then:
+        !review.taskRun(':build')
+        review.taskUpToDate('build')
+        review.taskNotExecuted('app:build')
+    }
+
+    def "fails before any build"() {
+        given:
+        tasks = null
+
+        when:
+        review.taskRun(':build')
+
+        then:
+        thrown(IllegalStateException)
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.noproxy.gradle.test.internal
+
+import com.github.noproxy.gradle.test.api.ZipIntegrator
+import org.junit.Rule
+import spock.lang.Specification
+
+import java.util.zip.ZipEntry
+import java.util.zip.ZipException
+import java.util.zip.ZipFile
+import java.util.zip.ZipInputStream
+
+import static com.github.noproxy.gradle.test.api.ZipIntegrator.Compression.DEFLATED
+import static com.github.noproxy.gradle.test.api.ZipIntegrator.Compression.STORED
+
+class ZipAssemblerSpec extends Specification {
+    @Rule
+    TestNameTestDirectoryProvider testDirectoryProvider = new TestNameTestDirectoryProvider()
+    DefaultFileIntegrator integrator = new DefaultFileIntegrator(testDirectoryProvider.root)
+
+    File assemble(String path, long time, Map<ZipAssembler.Source, ZipIntegrator.Compression> sources) {
+        def zip = integrator.file(path)
+        zip.withOutputStream { out ->
+            def assembler = new ZipAssembler(out, time)
+            sources.each { source, compression -> assembler.add(ZipAssembler.compress(source, compression)) }
+            assembler.finish()
+        }
+        return zip
+    }
+
+    File reproducibleZip(String name, List<String> names) {
+        // an integrator of its own, the archive is written when it is closed
+        def owner = new DefaultFileIntegrator(integrator.newDir(name))
+        def zip = owner.newZip('out.zip') { ZipIntegrator zip ->
+            zip.reproducible = true
+            zip.compressionPolicy = { it.endsWith('.png') ? STORED : DEFLATED } as ZipIntegrator.CompressionPolicy
+            names.each { zip.entry(it, "content of $it") }
+            zip.newFile('staged/file.txt').text = 'staged'
+        }
+        owner.close()
+        return zip
+    }
+
+    def "stored and deflated entries are read back by java.util.zip"() {
+        given:
+        def large = ('deflated ' * 10_000).bytes
+        def source = integrator.newFile('source.bin')
+        source.bytes = (0..255) as byte[]
+
+        when:
+        def zip = assemble('out.zip', System.currentTimeMillis(), [
+                (ZipAssembler.Source.of('stored.txt', 'stored'.bytes))     : STORED,
+                (ZipAssembler.Source.of('dir/deflated.txt', large))       : DEFLATED,
+                (ZipAssembler.Source.of('from/file.bin', source.toPath())): STORED,
+        ])
+
+        then:
+        new ZipFile(zip).withCloseable { file ->
+            def stored = file.getEntry('stored.txt')
+            def deflated = file.getEntry('dir/deflated.txt')
+            def fromFile = file.getEntry('from/file.bin')
+            assert stored.method == ZipEntry.STORED
+            assert file.getInputStream(stored).bytes == 'stored'.bytes
+            assert deflated.method == ZipEntry.DEFLATED
+            assert deflated.compressedSize < deflated.size
+            assert file.getInputStream(deflated).bytes == large
+            assert fromFile.method == ZipEntry.STORED
+            assert file.getInputStream(fromFile).bytes == source.bytes
+            file.entries().toList()*.name == ['stored.txt', 'dir/deflated.txt', 'from/file.bin']
+        }
+        // the local headers are valid too, not only the central directory
+        new ZipInputStream(zip.newInputStream()).withCloseable { input ->
+            def contents = [:]
+            for (def entry = input.nextEntry; entry != null; entry = input.nextEntry) {
+                def content = new ByteArrayOutputStream()
+                content << input
+                contents[entry.name] = content.toByteArray()
+            }
+            contents == ['stored.txt': 'stored'.bytes, 'dir/deflated.txt': large, 'from/file.bin': source.bytes]
+        }
+    }
+
+    def "duplicate entries are rejected"() {
+        when:
+        assemble('out.zip', System.currentTimeMillis(), [
+                (ZipAssembler.Source.of('same.txt', 'first'.bytes)) : STORED,
+                (ZipAssembler.Source.of('same.txt', 'second'.bytes)): DEFLATED,
+        ])
+
+        then:
+        def e = thrown(ZipException)
+        e.message == 'duplicate entry: same.txt'
+    }
+
+    def "reproducible archives of the same content are byte identical"() {
+        when:
+        def first = reproducibleZip('first', ['b.txt', 'a/c.png', 'a.txt'])
+        Thread.sleep(2000)
+        def second = reproducibleZip('second', ['a.txt', 'b.txt', 'a/c.png'])
+
+        then:
+        first.bytes == second.bytes
+        new ZipFile(first).withCloseable { file ->
+            def entries = file.entries().toList()
+            assert entries*.name == ['a.txt', 'a/c.png', 'b.txt', 'staged/file.txt']
+            assert entries.every { it.time == ZipAssembler.REPRODUCIBLE_TIME }
+            assert file.getEntry('a/c.png').method == ZipEntry.STORED
+            file.getInputStream(file.getEntry('staged/file.txt')).text == 'staged'
+        }
+    }
+}
@@ -19,23 +19,70 @@ package com.github.noproxy.gradle.test.api.extension
 import com.github.noproxy.gradle.test.api.FileIntegrator
 import com.github.noproxy.gradle.test.api.template.IntegrateSpecification
 import com.github.noproxy.gradle.test.internal.DefaultFileIntegrator
+import com.github.noproxy.gradle.test.internal.RepositorySnapshot
 import com.google.common.base.Joiner
 import com.google.common.collect.Lists
+import groovy.transform.PackageScope
 import groovy.transform.stc.ClosureParams
 import groovy.transform.stc.SimpleType
 import org.jetbrains.annotations.NotNull
 
 //TODO 定义checker 谁来close，什么时候close，hide文件由谁创建
 class MavenChecker {
+    @PackageScope
+    static File goldenSnapshot(String name) {
+        return new File(System.getProperty('noproxy.snapshot.dir', 'src/integrationTest/snapshots'), name + '.txt')
+    }
+
     static class MavenContext {
         private final File root
+        private final List<String> ignores = new ArrayList<>(RepositorySnapshot.DEFAULT_IGNORES)
 
         MavenContext(File root) {
             this.root = root
         }
 
+        /**
+         * Leave the files matching the globs, relative to the repository, out of the snapshot.
+         */
+        void ignore(String... globs) {
+            ignores.addAll(globs)
+        }
+
+        /**
+         * The snapshot of the whole repository, computed again on every call so it follows the builds in between.
+         */
+        RepositorySnapshot getSnapshot() {
+            return RepositorySnapshot.of(root, ignores)
+        }
+
+        /**
+         * Compare the whole repository with the golden snapshot {@code <noproxy.snapshot.dir>/<name>.txt}, written
+         * with {@code -Pnoproxy.snapshot.update=true}, see {@link RepositorySnapshot#assertMatches(File)}.
+         */
+        void matchesSnapshot(String name) {
+            getSnapshot().assertMatches(MavenChecker.goldenSnapshot(name))
+        }
+
+        /**
+         * @param notation {@code group:artifact:version}, or {@code group:artifact} when the repository has a single
+         * version of the module
+         */
         void module(String notation, @DelegatesTo(ModuleContext) Closure closure) {
-            //TODO
+            def parts = notation.split(':')
+            assert parts.length in [2, 3]: "expected group:artifact[:version] but was '$notation'"
+            // listed from the disk, hashing the whole repository is only worth it for snapshots
+            def moduleDir = new File(root, parts[0].replace('.', '/') + '/' + parts[1])
+            def versions = (moduleDir.listFiles()?.findAll { it.directory }*.name ?: []).sort()
+            String version
+            if (parts.length == 3) {
+                version = parts[2]
+                assert versions.contains(version): "$notation is not in $root, found versions $versions"
+            } else {
+                assert versions.size() == 1: "expected a single version of $notation in $root, found $versions"
+                version = versions.first()
+            }
+            module(parts[0], parts[1], version, closure)
         }
 
         void module(String groupId, String artifactId, String version, @DelegatesTo(ModuleContext) Closure closure) {
@@ -143,6 +190,18 @@ class MavenChecker {
             return component("aar")
         }
 
+        RepositorySnapshot getSnapshot() {
+            return RepositorySnapshot.of(moduleRoot, RepositorySnapshot.DEFAULT_IGNORES)
+        }
+
+        /**
+         * Compare the version directory of the module with the golden snapshot
+         * {@code <noproxy.snapshot.dir>/<name>.txt}, see {@link RepositorySnapshot#assertMatches(File)}.
+         */
+        void matchesSnapshot(String name) {
+            getSnapshot().assertMatches(MavenChecker.goldenSnapshot(name))
+        }
+
         void noOtherComponents() {
             assert others.isEmpty()
         }
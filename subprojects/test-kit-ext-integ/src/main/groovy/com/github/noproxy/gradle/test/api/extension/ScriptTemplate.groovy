@@ -16,11 +16,11 @@
 
 package com.github.noproxy.gradle.test.api.extension
 
+import com.github.noproxy.gradle.test.api.ProjectIntegrator
 import com.github.noproxy.gradle.test.api.TemplateOptions
-import com.github.noproxy.gradle.test.api.template.IntegrateSpecification
 
 class ScriptTemplate {
-    static void androidApplication(IntegrateSpecification self, String applicationId) {
+    static void androidApplication(ProjectIntegrator self, String applicationId) {
         useAndroidApplicationPlugin(self)
 
         self.buildFile {
@@ -38,7 +38,7 @@ class ScriptTemplate {
         }
     }
 
-    static void androidLibrary(IntegrateSpecification self) {
+    static void androidLibrary(ProjectIntegrator self) {
         useAndroidLibraryPlugin(self)
 
         self.buildFile {
@@ -55,7 +55,7 @@ class ScriptTemplate {
         }
     }
 
-    static void usePortalPlugin(IntegrateSpecification self, String id, String version = null, boolean apply = true) {
+    static void usePortalPlugin(ProjectIntegrator self, String id, String version = null, boolean apply = true) {
         self.plugins {
             append "id '$id'"
             if (!apply) {
@@ -64,7 +64,7 @@ class ScriptTemplate {
         }
     }
 
-    static void usePlugin(IntegrateSpecification self, String id = null,
+    static void usePlugin(ProjectIntegrator self, String id = null,
                           String classpath,
                           String... mavenUrls = []) {
         self.buildscript {
@@ -91,14 +91,14 @@ class ScriptTemplate {
     }
 
     /*
-        static void useAndroidLibraryPlugin(IntegrateSpecification self, String version = null, boolean apply = true) {
+        static void useAndroidLibraryPlugin(ProjectIntegrator self, String version = null, boolean apply = true) {
         def classpath = "com.android.tools.build:gradle:${version ?: TemplateOptions.getAndroidPluginVersion()}"
         def id = apply ? 'com.android.library' : null
         usePlugin(self, id, classpath)
     }
      */
 
-    static void useAndroidLibraryPlugin(IntegrateSpecification self, String version = TemplateOptions.getAndroidPluginVersion(), boolean apply = true) {
+    static void useAndroidLibraryPlugin(ProjectIntegrator self, String version = TemplateOptions.getAndroidPluginVersion(), boolean apply = true) {
         self.buildscript {
             google()
             jcenter()
@@ -106,7 +106,7 @@ class ScriptTemplate {
         usePlugin(self, apply ? 'com.android.library' : null, "com.android.tools.build:gradle:$version")
     }
 
-    static void useAndroidApplicationPlugin(IntegrateSpecification self, String version = TemplateOptions.getAndroidPluginVersion(), boolean apply = true) {
+    static void useAndroidApplicationPlugin(ProjectIntegrator self, String version = TemplateOptions.getAndroidPluginVersion(), boolean apply = true) {
         self.buildscript {
             google()
             jcenter()
@@ -0,0 +1,47 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.noproxy.gradle.test.api.template
+
+import com.github.noproxy.gradle.test.api.FileIntegrator
+import com.github.noproxy.gradle.test.api.MavenIntegrator
+import com.github.noproxy.gradle.test.api.ProjectIntegrator
+import com.github.noproxy.gradle.test.internal.Integrators
+
+/**
+ * The delegate of a fixture generator, see {@link IntegrateSpecification#fixture(String, Closure)}.
+ * It offers the same integrators as the specification, rooted in the fixture.
+ */
+class FixtureContext {
+    @Delegate(parameterAnnotations = true)
+    private final FileIntegrator integrator
+
+    @Delegate(parameterAnnotations = true)
+    private final ProjectIntegrator project
+
+    private final MavenIntegrator mavenDefaults
+
+    FixtureContext(FileIntegrator integrator) {
+        this.integrator = integrator
+        this.project = Integrators.project(integrator)
+        this.mavenDefaults = Integrators.mavenDefaults(integrator)
+    }
+
+    void maven(@DelegatesTo(MavenIntegrator) Closure closure) {
+        closure.delegate = mavenDefaults
+        closure()
+    }
+}
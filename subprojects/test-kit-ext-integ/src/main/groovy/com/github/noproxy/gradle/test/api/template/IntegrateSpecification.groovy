@@ -37,12 +37,73 @@ class IntegrateSpecification extends Specification {
     private BuildRunner runner = new DefaultBuildRunner(integrator)
 
     @Delegate(parameterAnnotations = true)
-    private TaskReview taskReview = new OutputTaskReview(runner)
+    private TaskReview taskReview = new TaskOutcomeReview(runner)
 
     private final MavenIntegrator mavenDefaults = Integrators.mavenDefaults(integrator)
 
+    @Rule
+    DefaultMavenHttpServer mavenHttpServer = new DefaultMavenHttpServer(integrator.root)
+
     void maven(@DelegatesTo(MavenIntegrator) Closure closure) {
         closure.delegate = mavenDefaults
         closure()
     }
+
+    /**
+     * Publish modules to the repository shared by all specifications and test runs, a module is only generated by
+     * the first publication of its coordinates, publish another content under another version. Use it in build scripts with
+     * {@link HasRepositories#sharedMaven()}.
+     */
+    void sharedMaven(@DelegatesTo(MavenIntegrator) Closure closure) {
+        closure.delegate = Integrators.sharedMaven()
+        closure()
+    }
+
+    /**
+     * The maven defaults repository served over HTTP, started by the first call and stopped after the test. Use it
+     * in build scripts with {@link HasRepositories#mavenDefaultsHttp()}.
+     */
+    MavenHttpServer getMavenHttp() {
+        mavenHttpServer.start()
+        mavenHttpServer
+    }
+
+    /**
+     * Copy a fixture project into the test directory, it is generated by the closure and warmed up only the first
+     * time the key is seen.
+     * <p>
+     * The fixture replaces the build script blocks of this specification, so only append to the build file after
+     * restoring it. See {@link FixtureSnapshots} for the cache key and hard links.
+     *
+     * @param key identifies the fixture and everything the closure depends on, captured variables and helpers
+     * included: the closure is not run again while the key does not change
+     * @param warmUpArguments when not empty, run a build with these arguments before snapshotting the fixture,
+     * so its build outputs and .gradle state are restored too
+     */
+    void fixture(String key, List<String> warmUpArguments = [], @DelegatesTo(FixtureContext) Closure closure) {
+        def warmUp = warmUpArguments.empty ? null : { File dir ->
+            def warmUpRunner = new DefaultBuildRunner(new DefaultFileIntegrator(dir))
+            warmUpRunner.run(warmUpArguments as String[])
+            warmUpRunner.success()
+        }
+        def snapshotKey = ([key] + warmUpArguments).join(' ')
+        FixtureSnapshots.shared().restore(snapshotKey, integrator.root, { FileIntegrator fixtureRoot ->
+            def generator = closure.clone() as Closure
+            generator.delegate = new FixtureContext(fixtureRoot)
+            generator.resolveStrategy = Closure.DELEGATE_FIRST
+            generator()
+        }, warmUp)
+    }
+
+    /**
+     * Benchmark the configuration of the project in the test directory, the result is also written as JSON to
+     * {@code build/reports/benchmarks/<name>.json}.
+     */
+    BenchmarkResult benchmarkConfiguration(String name,
+                                           @DelegatesTo(ConfigurationBenchmark) Closure closure = {}) {
+        def benchmark = new DefaultConfigurationBenchmark(runner, name)
+        closure.delegate = benchmark
+        closure()
+        benchmark.run()
+    }
 }
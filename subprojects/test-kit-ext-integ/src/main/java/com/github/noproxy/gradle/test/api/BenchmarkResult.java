@@ -0,0 +1,62 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.noproxy.gradle.test.api;
+
+import java.io.File;
+import java.util.List;
+
+/**
+ * The measured iterations of a {@link ConfigurationBenchmark}, the warm-up iterations are not included.
+ */
+public interface BenchmarkResult {
+    String getName();
+
+    /**
+     * @return the configuration time of every measured iteration, in order
+     */
+    List<Long> getConfigurationMillis();
+
+    double getMeanMillis();
+
+    /**
+     * @param percentile in (0, 100]
+     * @return the nearest-rank percentile of the configuration time
+     */
+    long getPercentileMillis(double percentile);
+
+    /**
+     * @return the mean bytes allocated by one configuration over the iterations whose allocation was measured, or -1
+     * if the daemon could not measure allocation in any iteration
+     */
+    long getAllocatedBytesPerIteration();
+
+    /**
+     * @return the number of iterations left out of the allocation, the daemon could not measure them or their
+     * allocation delta was negative because threads which allocated during the configuration had ended
+     */
+    int getExcludedAllocationSamples();
+
+    /**
+     * @return the allocated megabytes per second of configuration, or -1 if the daemon could not measure allocation
+     */
+    double getAllocationRateMbPerSecond();
+
+    /**
+     * @return the JSON report written for this result
+     */
+    File getReportFile();
+}
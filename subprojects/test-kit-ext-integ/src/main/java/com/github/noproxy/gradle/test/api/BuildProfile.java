@@ -0,0 +1,67 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.noproxy.gradle.test.api;
+
+import org.gradle.testkit.runner.TaskOutcome;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.List;
+
+/**
+ * Timings recorded during a build run with profiling enabled, see {@link BuildRunner#profile()}.
+ */
+public interface BuildProfile {
+    /**
+     * @return the time from the start of the build to the task graph being ready
+     */
+    long getConfigurationMillis();
+
+    /**
+     * @return the bytes allocated by the daemon during the configuration phase, or -1 if the JVM does not
+     * support measuring thread allocation; it may be negative when threads which allocated during the configuration
+     * ended before it was measured
+     */
+    long getConfigurationAllocatedBytes();
+
+    /**
+     * @return the executed tasks, in the order they finished
+     */
+    List<TaskProfile> getTasks();
+
+    /**
+     * @param task an exact path when it starts with ':', otherwise a path suffix like in {@link TaskReview}
+     * @return the first task matching, or null
+     */
+    @Nullable
+    TaskProfile task(String task);
+
+    void assertConfigurationFasterThan(long millis);
+
+    void assertTaskFasterThan(String task, long millis);
+
+    interface TaskProfile {
+        String getPath();
+
+        long getStartMillis();
+
+        long getEndMillis();
+
+        long getDurationMillis();
+
+        TaskOutcome getOutcome();
+    }
+}
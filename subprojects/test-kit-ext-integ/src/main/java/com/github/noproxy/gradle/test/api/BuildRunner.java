@@ -18,25 +18,115 @@ package com.github.noproxy.gradle.test.api;
 
 import com.github.noproxy.gradle.test.internal.Closer;
 
+import org.gradle.api.Action;
+import org.gradle.testkit.runner.BuildTask;
 import org.jetbrains.annotations.Nullable;
 
+import java.util.List;
+
 @Closer
 public interface BuildRunner {
     void buildArgument(String... additionArguments);
 
     void quiet();
 
+    /**
+     * Record a {@link BuildProfile} for the following builds.
+     * <p>
+     * The profile is recorded by build listeners, which the configuration cache rejects: a profiled build fails fast
+     * with {@code --configuration-cache}, including {@link #runWithConfigurationCache(String...)}.
+     */
+    void profile();
+
     void setWithPluginClasspath(boolean withPluginClasspath);
 
+    /**
+     * Use another Gradle version, null for the current one. The distribution is resolved from local files when
+     * system property {@code noproxy.gradle.distributions} or {@code noproxy.gradle.distributionUrl} is set,
+     * and the build fails fast if it is not found there.
+     */
     void setGradleVersion(@Nullable String gradleVersion);
 
     void forwardOutput(boolean forward);
 
+    /**
+     * Set how many chars of the build output are kept in memory, the whole output is spilled to a file.
+     * The default comes from system property {@code noproxy.runner.outputBufferChars} and is 64K.
+     */
+    void setOutputBufferSize(int chars);
+
+    /**
+     * Register a matcher evaluated on every line of the output while the following builds run.
+     */
+    OutputMatcher outputContains(String text);
+
+    /**
+     * Register a matcher evaluated on every line of the output while the following builds run,
+     * a line matches if the regex is found in it.
+     */
+    OutputMatcher outputMatches(String regex);
+
+    ExecutionMode getExecutionMode();
+
+    /**
+     * Select how the following builds are executed, the default comes from system property
+     * {@code noproxy.runner.executionMode} and is {@link ExecutionMode#IN_PROCESS}.
+     */
+    void setExecutionMode(ExecutionMode executionMode);
+
     @Closer
     void run(String... tasksAndArguments);
 
+    /**
+     * Run the build twice with an isolated local build cache and report the tasks which were not up-to-date in the
+     * second build. The first build must succeed.
+     */
+    @Closer
+    RerunReport runTwice(String... tasksAndArguments);
+
+    /**
+     * Like {@link #runTwice(String...)}, and change the project between the builds, for example to check that
+     * an input is tracked.
+     */
+    @Closer
+    RerunReport runTwice(Action<? super FileIntegrator> between, String... tasksAndArguments);
+
+    /**
+     * Run the build, then {@code clean} in a build of its own, then run the build again and report the tasks
+     * which were not loaded from the isolated local build cache (nor up-to-date) in the second build.
+     */
+    @Closer
+    RerunReport runWithCleanCacheHit(String... tasksAndArguments);
+
+    /**
+     * Like {@link #runTwice(String...)} with the configuration cache enabled, the report also tells whether
+     * the configuration cache entry was reused.
+     */
+    @Closer
+    RerunReport runWithConfigurationCache(String... tasksAndArguments);
+
+    /**
+     * @return the whole output of the last build, read back from the file it was spilled to
+     */
     String getOutput();
 
+    /**
+     * @return the last chars of the output of the last build, as many as the output buffer size
+     */
+    String getOutputTail();
+
+    /**
+     * @return the tasks of the last build with their outcomes, or null if no build has been run
+     */
+    @Nullable
+    List<BuildTask> getBuildTasks();
+
+    /**
+     * @return the profile of the last build, or null if profiling was not enabled or the build did not finish
+     */
+    @Nullable
+    BuildProfile getProfile();
+
     @Closer
     void assemble(String... additionArguments);
 
@@ -0,0 +1,43 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.noproxy.gradle.test.api;
+
+/**
+ * Measures the configuration phase of the project generated by the integrators, by running {@code help} repeatedly
+ * on a warm daemon with profiling enabled.
+ * <p>
+ * The default iterations come from system properties {@code noproxy.benchmark.warmUps} (5) and
+ * {@code noproxy.benchmark.iterations} (10), so CI can trade accuracy for time. The daemon is not recycled while the
+ * benchmark runs, whatever {@code noproxy.daemon.maxBuilds}.
+ */
+public interface ConfigurationBenchmark {
+    void setWarmUpIterations(int iterations);
+
+    void setMeasuredIterations(int iterations);
+
+    /**
+     * Add arguments to every iteration, besides those of the build runner.
+     */
+    void arguments(String... arguments);
+
+    /**
+     * Run the iterations, every one must succeed, and write the result to
+     * {@code build/reports/benchmarks/<name>.json}, the directory can be changed by system property
+     * {@code noproxy.benchmark.reportDir}.
+     */
+    BenchmarkResult run();
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.noproxy.gradle.test.api;
+
+/**
+ * Generates many maven modules depending on each other, see {@link MavenIntegrator#generateModules(groovy.lang.Closure)}.
+ * <p>
+ * Modules are numbered from 0 and only depend on modules with a greater number, so the graph is acyclic. Module
+ * {@code i} is {@code <group>.g<i % groups>:<name>:1.<v>.0} with {@code v} from 0 to versions - 1. Every version of a
+ * module has the same dependencies, usually on their latest version. The graph only depends on the options, the
+ * same seed always generates the same repository.
+ */
+public interface DependencyGraph {
+    void setCount(int count);
+
+    /**
+     * The versions of every module, 1 by default.
+     */
+    void setVersions(int versions);
+
+    /**
+     * The seed of the graph, 0 by default.
+     */
+    void setSeed(long seed);
+
+    /**
+     * The group prefix, {@code generated} by default.
+     */
+    void setGroup(String group);
+
+    /**
+     * How many groups the modules are spread over, 1 by default.
+     */
+    void setGroups(int groups);
+
+    /**
+     * A {@link String#format(String, Object...)} pattern of the artifact ids, taking the module number,
+     * {@code lib%05d} by default.
+     */
+    void setNamePattern(String namePattern);
+
+    /**
+     * The most direct dependencies of a module, 3 by default.
+     */
+    void setMaxDependencies(int maxDependencies);
+
+    /**
+     * The probability that a dependency asks for an older version than the latest, so resolution has version
+     * conflicts to solve, 0.2 by default.
+     */
+    void setConflictRate(double conflictRate);
+
+    /**
+     * How many BOMs, {@code <group>:bom<b>:1.0.0} with packaging pom, manage the versions of the modules, 0 by default.
+     * Module {@code i} is managed by BOM {@code i % boms} at a random version.
+     */
+    void setBoms(int boms);
+
+    /**
+     * The probability that a module also publishes a {@code jdk8} classifier artifact, dependencies on it then ask
+     * for the classifier half of the time, 0 by default.
+     */
+    void setClassifierRate(double classifierRate);
+
+    /**
+     * {@code jar}, the default, or {@code aar}.
+     */
+    void setPackaging(String packaging);
+}
@@ -0,0 +1,39 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.noproxy.gradle.test.api;
+
+/**
+ * How a {@link BuildRunner} executes the builds it runs.
+ */
+public enum ExecutionMode {
+    /**
+     * Runs every build in the test process with debug enabled. This is the default.
+     */
+    IN_PROCESS,
+
+    /**
+     * Leases a warm TestKit daemon from a pool shared by the whole test JVM, see
+     * {@code com.github.noproxy.gradle.test.internal.DaemonPool}.
+     */
+    WARM_DAEMON;
+
+    private static final String EXECUTION_MODE_PROPERTY = "noproxy.runner.executionMode";
+
+    public static ExecutionMode getDefault() {
+        return valueOf(System.getProperty(EXECUTION_MODE_PROPERTY, IN_PROCESS.name()));
+    }
+}
@@ -30,4 +30,15 @@ public interface HasRepositories {
     void maven(String name, String url);
 
     void mavenDefaults();
+
+    /**
+     * The maven defaults repository served over HTTP by the {@link MavenHttpServer} of the specification, which must
+     * be started before the build.
+     */
+    void mavenDefaultsHttp();
+
+    /**
+     * The repository of the modules published with {@code sharedMaven} by the specifications.
+     */
+    void sharedMaven();
 }
@@ -16,8 +16,31 @@
 
 package com.github.noproxy.gradle.test.api;
 
+import groovy.lang.Closure;
+import groovy.lang.DelegatesTo;
+import org.gradle.api.Action;
+
 public interface JarIntegrator extends ZipIntegrator {
     void newClass(String className, String javaSource);
 
     void newClass(String packageName, String simpleClassName, String javaSource);
+
+    /**
+     * Add an empty public class generated without javac, the classes compiled from sources of this jar can use it.
+     */
+    void stubClass(String className);
+
+    /**
+     * Add a class generated without javac, the classes compiled from sources of this jar can use it.
+     */
+    void stubClass(String className, Action<? super StubClassSpec> action);
+
+    void stubClass(String className, @DelegatesTo(value = StubClassSpec.class, strategy = Closure.DELEGATE_FIRST)
+            Closure closure);
+
+    /**
+     * Put the stub classes of another jar on the classpath of the sources of this jar, the sources of a jar can not
+     * use any other class of the fixture.
+     */
+    void classpath(JarIntegrator jar);
 }
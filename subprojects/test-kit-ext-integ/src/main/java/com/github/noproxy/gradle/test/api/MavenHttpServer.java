@@ -0,0 +1,76 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.noproxy.gradle.test.api;
+
+import java.net.URI;
+import java.util.List;
+
+/**
+ * Serves the maven defaults repository over HTTP on localhost, so builds resolve like they do from a remote
+ * repository. Use it in build scripts with {@link HasRepositories#mavenDefaultsHttp()}.
+ * <p>
+ * Every option can be changed between builds, or during one.
+ */
+public interface MavenHttpServer {
+    /**
+     * Start the server, does nothing when already started.
+     */
+    void start();
+
+    URI getUri();
+
+    /**
+     * Wait before answering every request, 0 by default.
+     */
+    void setLatencyMillis(long latencyMillis);
+
+    /**
+     * Limit the bytes per second sent for every request, 0 for unlimited, the default.
+     */
+    void setBandwidth(long bytesPerSecond);
+
+    /**
+     * Answer every request whose path matches the regular expression with the status code.
+     */
+    void fail(String pathRegex, int status);
+
+    /**
+     * Answer the next requests whose path matches the regular expression with the status code.
+     */
+    void failNext(String pathRegex, int status, int times);
+
+    /**
+     * Answer requests normally again.
+     */
+    void clearFailures();
+
+    int getRequestCount();
+
+    /**
+     * @param method like {@code GET} or {@code HEAD}
+     */
+    int getRequestCount(String method);
+
+    /**
+     * @return the requests received so far in order, like {@code GET /com/example/lib/1.0/lib-1.0.pom}
+     */
+    List<String> getRequests();
+
+    void resetRequests();
+
+    void stop();
+}
@@ -28,6 +28,19 @@ import java.io.Closeable;
 // support not create pom
 // support modify pom
 public interface MavenIntegrator extends Closeable, Integrator {
+    /**
+     * Write the {@code .md5}, {@code .sha1}, {@code .sha256} and {@code .sha512} files of every file of the modules
+     * when closed, like a real repository. The default comes from system property {@code noproxy.maven.checksums},
+     * enabled unless set to false.
+     */
+    void setChecksums(boolean checksums);
+
+    /**
+     * Write the Gradle module metadata, {@code .module}, of every module without one when closed, and mark the POMs
+     * as published with it. The default comes from system property {@code noproxy.maven.gradleMetadata}.
+     */
+    void setGradleMetadata(boolean gradleMetadata);
+
     void javaModule(String group, String artifact, String version, Action<JarIntegrator> action);
 
     void androidModule(String group, String artifact, String version, Action<AarIntegrator> action);
@@ -47,4 +60,13 @@ public interface MavenIntegrator extends Closeable, Integrator {
 
     void module(String group, String artifact, String version, String packaging,
                 @DelegatesTo(value = ModuleIntegrator.class, strategy = Closure.DELEGATE_FIRST) Closure closure);
+
+    /**
+     * Generate a large repository of modules depending on each other, the files are written in parallel when this
+     * integrator is closed, with their checksums but without Gradle module metadata.
+     */
+    void generateModules(@DelegatesTo(value = DependencyGraph.class,
+            strategy = Closure.DELEGATE_FIRST) Closure graphConfigure);
+
+    void generateModules(Action<? super DependencyGraph> graphConfigure);
 }
@@ -0,0 +1,35 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.noproxy.gradle.test.api;
+
+/**
+ * An assertion on the build output, evaluated line by line while the build runs.
+ * <p>
+ * Register it on a {@link BuildRunner} before running the build; the result is available after the build, without
+ * the runner keeping the whole output in memory. A matcher is reset at the start of every build.
+ */
+public interface OutputMatcher {
+    /**
+     * @return true if at least one line of the last build output matched
+     */
+    boolean isMatched();
+
+    /**
+     * @return the number of lines of the last build output that matched
+     */
+    int getMatchCount();
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.noproxy.gradle.test.api;
+
+import java.util.List;
+
+/**
+ * Generates many subprojects depending on each other, see {@link ProjectIntegrator#generateProjects(groovy.lang.Closure)}.
+ * <p>
+ * Modules are numbered from 0 and only depend on modules with a greater number, so every shape is acyclic.
+ * The graph only depends on the options, the same seed always generates the same build.
+ */
+public interface ProjectGraph {
+    void setCount(int count);
+
+    void setShape(Shape shape);
+
+    /**
+     * The seed of {@link Shape#RANDOM_DAG}, 0 by default.
+     */
+    void setSeed(long seed);
+
+    /**
+     * A {@link String#format(String, Object...)} pattern of the module names, taking the module number,
+     * {@code module%04d} by default.
+     */
+    void setNamePattern(String namePattern);
+
+    /**
+     * The children of a module in a {@link Shape#TREE}, 2 by default.
+     */
+    void setBranching(int branching);
+
+    /**
+     * The most dependencies of a module in a {@link Shape#RANDOM_DAG}, 3 by default.
+     */
+    void setMaxDependencies(int maxDependencies);
+
+    /**
+     * Generate Android library modules instead of Java library modules, the root build script gets the Android
+     * plugin classpath of {@link TemplateOptions#getAndroidPluginVersion()}.
+     */
+    void setAndroidLibrary(boolean androidLibrary);
+
+    /**
+     * Replace the default build file of the modules, a manifest is still generated for Android libraries.
+     */
+    void template(ModuleTemplate template);
+
+    enum Shape {
+        /**
+         * Every module depends on the next one.
+         */
+        CHAIN,
+        /**
+         * Every module depends on its children, module 0 is the root of the tree.
+         */
+        TREE,
+        /**
+         * Every module depends on up to max dependencies random modules with a greater number.
+         */
+        RANDOM_DAG
+    }
+
+    interface ModuleTemplate {
+        /**
+         * Called concurrently for different modules.
+         *
+         * @param name the name of the module
+         * @param dependencies the project paths this module depends on, like {@code :module0001}
+         * @return the whole build file of the module
+         */
+        String buildFile(String name, List<String> dependencies);
+    }
+}
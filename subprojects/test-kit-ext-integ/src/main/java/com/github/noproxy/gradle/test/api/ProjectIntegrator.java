@@ -62,4 +62,13 @@ public interface ProjectIntegrator extends Closeable, AutoCloseable {
 
     void android(@DelegatesTo(value = AndroidIntegrator.class,
             strategy = Closure.DELEGATE_FIRST) Closure androidConfigure);
+
+    /**
+     * Generate subprojects and include them in the settings, the files are written in parallel when this
+     * integrator is closed.
+     */
+    void generateProjects(@DelegatesTo(value = ProjectGraph.class,
+            strategy = Closure.DELEGATE_FIRST) Closure graphConfigure);
+
+    void generateProjects(Action<? super ProjectGraph> graphConfigure);
 }
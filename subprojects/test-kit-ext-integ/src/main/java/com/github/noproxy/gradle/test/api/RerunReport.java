@@ -0,0 +1,49 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.noproxy.gradle.test.api;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The comparison of two builds run by {@link BuildRunner#runTwice(String...)} and its variants.
+ * <p>
+ * Build cache keys are recorded from the {@code org.gradle.caching.debug} output, so the inputs are only attributed
+ * reliably to their tasks when the builds do not run in parallel and are not quiet.
+ */
+public interface RerunReport {
+    /**
+     * @return the paths of the tasks which were not reused by the second build, in execution order
+     */
+    List<String> getMissedTasks();
+
+    /**
+     * @return the names of the build cache key inputs which differ between the two builds, by task path
+     */
+    Map<String, Set<String>> getDifferingInputs();
+
+    /**
+     * @return true if the second build reused the configuration cache entry stored by the first one
+     */
+    boolean isConfigurationCacheReused();
+
+    /**
+     * Assert no task missed in the second build, and the configuration cache was reused when it was enabled.
+     */
+    void assertAllReused();
+}
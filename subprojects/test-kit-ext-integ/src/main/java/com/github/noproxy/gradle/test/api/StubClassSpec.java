@@ -0,0 +1,51 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.noproxy.gradle.test.api;
+
+/**
+ * Declares a class whose bytecode is generated directly, without javac, see {@link JarIntegrator#stubClass}.
+ * <p>
+ * Types are written like in Java sources but fully qualified, like {@code java.lang.String}, {@code int} or
+ * {@code byte[]}, nested classes use their binary names like {@code com.example.Outer$Inner}. Methods and
+ * constructors throw {@code RuntimeException("Stub!")} like the classes of android.jar.
+ */
+public interface StubClassSpec {
+    /**
+     * The superclass, {@code java.lang.Object} by default; it must have an accessible constructor without parameters.
+     */
+    void setSuperclass(String superclass);
+
+    void interfaces(String... interfaces);
+
+    /**
+     * Declare an interface instead of a class, its methods are abstract.
+     */
+    void setInterface(boolean isInterface);
+
+    void setAbstract(boolean isAbstract);
+
+    void field(String name, String type);
+
+    void method(String name, String returnType, String... parameterTypes);
+
+    void staticMethod(String name, String returnType, String... parameterTypes);
+
+    /**
+     * Declare a constructor besides the public one without parameters.
+     */
+    void constructor(String... parameterTypes);
+}
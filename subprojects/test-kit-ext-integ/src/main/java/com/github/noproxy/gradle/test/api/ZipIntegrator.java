@@ -18,6 +18,52 @@ package com.github.noproxy.gradle.test.api;
 
 import java.io.File;
 
+/**
+ * Files created in this integrator are staged and archived when it is closed, entries declared by
+ * {@code entry} are written to the archive right away without being staged.
+ */
 public interface ZipIntegrator extends FileIntegrator {
     File getDestZipFile();
+
+    void entry(String path, byte[] content);
+
+    void entry(String path, CharSequence text);
+
+    /**
+     * Stream the source file into the archive, it is not read into memory.
+     */
+    void entry(String path, File source);
+
+    /**
+     * Sort the entries by name and give them all the same time, 1980-02-01, so the same content always results in
+     * the same archive. The default comes from system property {@code noproxy.zip.reproducible}.
+     * <p>
+     * Entries are held until the archive is closed when this is enabled.
+     */
+    void setReproducible(boolean reproducible);
+
+    /**
+     * Compress the entries in parallel when the archive is closed, and write them in order. The default comes from
+     * system property {@code noproxy.zip.parallelCompression}.
+     * <p>
+     * Entries are held until the archive is closed when this is enabled, the compressed entries are in memory
+     * until the archive is written.
+     */
+    void setParallelCompression(boolean parallel);
+
+    /**
+     * Choose the compression of every entry, entries are deflated by default.
+     */
+    void setCompressionPolicy(CompressionPolicy policy);
+
+    enum Compression {
+        STORED, DEFLATED
+    }
+
+    interface CompressionPolicy {
+        /**
+         * @param path the path of the entry in the archive, separated by '/'
+         */
+        Compression compressionOf(String path);
+    }
 }
@@ -16,44 +16,34 @@
 
 package com.github.noproxy.gradle.test.internal;
 
-import org.apache.commons.io.FileUtils;
 import org.gradle.api.Action;
 import org.gradle.api.GradleException;
+import org.jetbrains.annotations.Nullable;
 import org.junit.rules.TestRule;
 import org.junit.runner.Description;
 import org.junit.runners.model.Statement;
 
 import java.io.File;
 import java.io.IOException;
-import java.util.Random;
-import java.util.regex.Pattern;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
 
 
 /**
  * A JUnit rule which provides a unique temporary folder for the test.
  */
 public abstract class AbstractTestDirectoryProvider implements TestRule {
-    private static final Random RANDOM = new Random();
-    private static final int ALL_DIGITS_AND_LETTERS_RADIX = 36;
-    private static final int MAX_RANDOM_PART_VALUE = Integer.valueOf("zzzzz", ALL_DIGITS_AND_LETTERS_RADIX);
-    private static final Pattern WINDOWS_RESERVED_NAMES = Pattern.compile("(con)|(prn)|(aux)|(nul)|(com\\d)|(lpt\\d)", Pattern.CASE_INSENSITIVE);
     protected File root;
+    private final TestDirectoryBackend backend = TestDirectoryBackend.selected();
     private File dir;
+    private long createMillis;
     private String prefix;
     private boolean cleanup = true;
     private boolean suppressCleanupErrors;
-
-    private static File join(File file, Object... path) {
-        File current = file.getAbsoluteFile();
-        for (Object p : path) {
-            current = new File(current, p.toString());
-        }
-        try {
-            return current.getCanonicalFile();
-        } catch (IOException e) {
-            throw new RuntimeException(String.format("Could not canonicalise '%s'.", current), e);
-        }
-    }
+    private boolean cleanupOnFailure;
+    @Nullable
+    private Consumer<File> beforeDelete;
 
     static long toMillis(double seconds) {
         return (long) (seconds * 1000);
@@ -94,20 +84,58 @@ public abstract class AbstractTestDirectoryProvider implements TestRule {
         suppressCleanupErrors = true;
     }
 
+    /**
+     * Delete the test directory even when the test fails.
+     */
+    public void cleanupOnFailure() {
+        cleanupOnFailure = true;
+    }
+
+    /**
+     * Delete the test directory even when the test fails, but archive the relevant parts of it first, see
+     * {@link FailureArchiver}. The archive is written in the background, its path is printed to the output of the test.
+     */
+    public void archiveOnFailure() {
+        cleanupOnFailure = true;
+        if (dir == null || beforeDelete != null) {
+            return;
+        }
+        final String testName = getPrefix();
+        final File archive = FailureArchiver.shared().archiveFor(testName);
+        System.err.println("Test dir " + dir + " is archived to " + archive);
+        final AtomicBoolean archived = new AtomicBoolean();
+        // deletion is retried, archive only once
+        beforeDelete = content -> {
+            if (archived.compareAndSet(false, true)) {
+                FailureArchiver.shared().archive(content, archive, testName);
+            }
+        };
+    }
+
     public boolean isCleanup() {
         return cleanup;
     }
 
     public void cleanup() {
-        if (cleanup && dir != null && dir.exists()) {
-            poll(aVoid -> {
-                try {
-                    FileUtils.forceDelete(dir);
-                } catch (IOException e) {
-                    throw new RuntimeException(e);
-                }
-            });
+        if (dir == null) {
+            return;
+        }
+        if (!cleanup || !dir.exists()) {
+            TestDirectoryTimings.shared().record(getPrefix(), backend.getName(), createMillis, -1);
+            return;
         }
+        final long start = System.nanoTime();
+        final String testName = getPrefix();
+        poll(aVoid -> {
+            try {
+                backend.delete(root, dir, beforeDelete, millis ->
+                        TestDirectoryTimings.shared().recordBackgroundDelete(testName, backend.getName(), millis));
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        TestDirectoryTimings.shared().record(testName, backend.getName(), createMillis,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
     }
 
     public Statement apply(final Statement base, Description description) {
@@ -138,17 +166,10 @@ public abstract class AbstractTestDirectoryProvider implements TestRule {
     }
 
     private File createUniqueTestDirectory() {
-        while (true) {
-            // Use a random prefix to avoid reusing test directories
-            String randomPrefix = Integer.toString(RANDOM.nextInt(MAX_RANDOM_PART_VALUE), ALL_DIGITS_AND_LETTERS_RADIX);
-            if (WINDOWS_RESERVED_NAMES.matcher(randomPrefix).matches()) {
-                continue;
-            }
-            File result = join(root, getPrefix(), randomPrefix);
-            if (result.mkdirs()) {
-                return result;
-            }
-        }
+        final long start = System.nanoTime();
+        final File result = backend.create(root, getPrefix());
+        createMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        return result;
     }
 
     private String getPrefix() {
@@ -161,7 +182,7 @@ public abstract class AbstractTestDirectoryProvider implements TestRule {
     }
 
     public File file(Object... path) {
-        return join(getTestDirectory(), path);
+        return DiskTestDirectoryBackend.join(getTestDirectory(), path);
     }
 
     private class TestDirectoryCleaningStatement extends Statement {
@@ -175,8 +196,19 @@ public abstract class AbstractTestDirectoryProvider implements TestRule {
 
         @Override
         public void evaluate() throws Throwable {
-            // implicitly don't clean up if this throws
-            base.evaluate();
+            try {
+                base.evaluate();
+            } catch (Throwable t) {
+                // don't clean up if this throws, unless asked to
+                if (cleanupOnFailure) {
+                    try {
+                        cleanup();
+                    } catch (Exception e) {
+                        t.addSuppressed(e);
+                    }
+                }
+                throw t;
+            }
 
             try {
                 cleanup();
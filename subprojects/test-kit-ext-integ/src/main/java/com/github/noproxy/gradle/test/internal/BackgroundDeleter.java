@@ -0,0 +1,203 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.noproxy.gradle.test.internal;
+
+import org.apache.commons.io.FileUtils;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
+
+/**
+ * Deletes test directories off the test thread: a directory is atomically renamed into a trash directory on the
+ * same filesystem, then deleted by a background thread with the same retries as
+ * {@link AbstractTestDirectoryProvider#poll}.
+ * <p>
+ * At most {@code noproxy.testdir.deleteQueue} (64) directories wait for deletion, beyond that and once the JVM shuts
+ * down the test thread deletes them itself. Pending deletions are finished at JVM shutdown. When the rename fails,
+ * usually because a file is held open on Windows, the directory is deleted in place and the failure is left to the
+ * caller. Pooled directories are emptied in place by the same background thread instead, and handed back once empty.
+ * Set {@code noproxy.testdir.asyncDelete} to false to always delete in place.
+ */
+class BackgroundDeleter {
+    private static final boolean ENABLED = Boolean.parseBoolean(System.getProperty("noproxy.testdir.asyncDelete", "true"));
+    private static final BackgroundDeleter SHARED = new BackgroundDeleter(Integer.getInteger("noproxy.testdir.deleteQueue", 64));
+    private final ThreadPoolExecutor executor;
+    private final Map<File, Boolean> knownTrash = new ConcurrentHashMap<>();
+    private final AtomicLong counter = new AtomicLong();
+
+    BackgroundDeleter(int queueSize) {
+        executor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(Math.max(1, queueSize)),
+                runnable -> {
+                    final Thread thread = new Thread(runnable, "test-dir-deleter");
+                    thread.setDaemon(true);
+                    return thread;
+                }, (runnable, pool) -> runnable.run());
+        Runtime.getRuntime().addShutdownHook(new Thread(this::drain, "test-dir-deleter-drain"));
+    }
+
+    static BackgroundDeleter shared() {
+        return SHARED;
+    }
+
+    /**
+     * @return false if the directory was left in the trash
+     */
+    private static boolean deleteWithRetries(File trashed) {
+        return withRetries(trashed, FileUtils::forceDelete, "Couldn't delete trashed test dir ");
+    }
+
+    /**
+     * @return false if some files were left in the directory
+     */
+    private static boolean cleanWithRetries(File dir) {
+        return withRetries(dir, FileUtils::cleanDirectory, "Couldn't clean pooled test dir ");
+    }
+
+    private static boolean withRetries(File dir, IOAction action, String failure) {
+        try {
+            AbstractTestDirectoryProvider.poll(aVoid -> {
+                try {
+                    action.execute(dir);
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            });
+            return true;
+        } catch (RuntimeException e) {
+            // no test left to fail, the trash is retried by the next run
+            System.err.println(failure + dir);
+            e.printStackTrace(System.err);
+            return false;
+        }
+    }
+
+    private static void salvage(File dir, @Nullable Consumer<File> beforeDelete) {
+        if (beforeDelete == null) {
+            return;
+        }
+        try {
+            beforeDelete.accept(dir);
+        } catch (RuntimeException e) {
+            // the directory is deleted anyway
+            System.err.println("Couldn't salvage test dir " + dir);
+            e.printStackTrace(System.err);
+        }
+    }
+
+    /**
+     * Move the directory into the trash and schedule its deletion.
+     *
+     * @param dir          the directory to delete
+     * @param trash        the trash directory, must be on the same filesystem
+     * @param beforeDelete given the directory at its new location, just before it is deleted
+     * @param deleted      given the milliseconds the background deletion took, or -1 when it gave up; not called when
+     *                     the directory is deleted in place
+     */
+    void delete(File dir, File trash, @Nullable Consumer<File> beforeDelete, @Nullable LongConsumer deleted)
+            throws IOException {
+        if (!ENABLED) {
+            salvage(dir, beforeDelete);
+            FileUtils.forceDelete(dir);
+            return;
+        }
+
+        if (knownTrash.putIfAbsent(trash, Boolean.TRUE) == null) {
+            Files.createDirectories(trash.toPath());
+            // left over by a killed run
+            final File[] stale = trash.listFiles();
+            if (stale != null) {
+                for (File file : stale) {
+                    executor.execute(() -> deleteWithRetries(file));
+                }
+            }
+        }
+
+        final File trashed = new File(trash, dir.getName() + "-" + counter.incrementAndGet() + "-" + System.nanoTime());
+        try {
+            Files.move(dir.toPath(), trashed.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            // another filesystem or some file is held open, the caller retries
+            salvage(dir, beforeDelete);
+            FileUtils.forceDelete(dir);
+            return;
+        }
+        executor.execute(() -> {
+            final long start = System.nanoTime();
+            salvage(trashed, beforeDelete);
+            final boolean success = deleteWithRetries(trashed);
+            if (deleted != null) {
+                deleted.accept(success ? TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) : -1);
+            }
+        });
+    }
+
+    /**
+     * Schedule the deletion of the content of the directory, which stays in place.
+     *
+     * @param dir          the directory to empty
+     * @param beforeDelete given the directory just before its content is deleted
+     * @param deleted      given the milliseconds the cleaning took, or -1 when it gave up
+     * @param cleaned      called once the directory is empty, not called when it gave up
+     */
+    void clean(File dir, @Nullable Consumer<File> beforeDelete, @Nullable LongConsumer deleted, Runnable cleaned) {
+        final Runnable clean = () -> {
+            final long start = System.nanoTime();
+            salvage(dir, beforeDelete);
+            final boolean success = cleanWithRetries(dir);
+            if (deleted != null) {
+                deleted.accept(success ? TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) : -1);
+            }
+            if (success) {
+                cleaned.run();
+            }
+        };
+        if (ENABLED) {
+            executor.execute(clean);
+        } else {
+            clean.run();
+        }
+    }
+
+    /**
+     * Wait for the pending deletions, no more are accepted in the background afterwards.
+     */
+    void drain() {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+                System.err.println("Gave up waiting for " + executor.getQueue().size() + " trashed test dirs to be deleted");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private interface IOAction {
+        void execute(File dir) throws IOException;
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.noproxy.gradle.test.internal;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Records the build cache key inputs of every task from the output of a build run with
+ * {@code -Dorg.gradle.caching.debug=true}.
+ * <p>
+ * Gradle logs the inputs first and the task they belong to last, so inputs are held until the key line arrives;
+ * the last task header is the fallback for inputs which are never followed by a key line.
+ */
+class BuildCacheKeyRecorder implements BuildOutputSink.LineListener {
+    static final String BUILD_CACHE_KEY = "build cache key";
+    private static final Pattern TASK_HEADER = Pattern.compile("^> Task (:\\S+)");
+    private static final Pattern INPUT = Pattern.compile("^Appending (.+) to build cache key: (.*)$");
+    private static final Pattern KEY = Pattern.compile("^Build cache key for task '(:\\S+)' is (\\S+)");
+    private final Map<String, Map<String, String>> inputsByTask = new LinkedHashMap<>();
+    private Map<String, String> pending = new LinkedHashMap<>();
+    private String currentTask;
+
+    @Override
+    public synchronized void onLine(String line) {
+        Matcher matcher = INPUT.matcher(line);
+        if (matcher.find()) {
+            pending.put(matcher.group(1), matcher.group(2));
+            return;
+        }
+
+        matcher = KEY.matcher(line);
+        if (matcher.find()) {
+            pending.put(BUILD_CACHE_KEY, matcher.group(2));
+            inputsByTask.computeIfAbsent(matcher.group(1), path -> new LinkedHashMap<>()).putAll(pending);
+            pending = new LinkedHashMap<>();
+            return;
+        }
+
+        matcher = TASK_HEADER.matcher(line);
+        if (matcher.find()) {
+            flushPending();
+            currentTask = matcher.group(1);
+        }
+    }
+
+    private void flushPending() {
+        if (!pending.isEmpty() && currentTask != null) {
+            inputsByTask.computeIfAbsent(currentTask, path -> new LinkedHashMap<>()).putAll(pending);
+        }
+        pending = new LinkedHashMap<>();
+    }
+
+    /**
+     * @return the recorded inputs by task path, the input values are the hashes logged by Gradle
+     */
+    synchronized Map<String, Map<String, String>> getInputsByTask() {
+        flushPending();
+        return Collections.unmodifiableMap(new LinkedHashMap<>(inputsByTask));
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.noproxy.gradle.test.internal;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+
+/**
+ * Receives the output of a build while it runs.
+ * <p>
+ * Only the tail of the output is kept in memory, in a ring buffer of a fixed number of chars; the whole output is
+ * spilled to a file and read back on demand. Every complete line is handed to the registered {@link LineListener}s.
+ */
+class BuildOutputSink extends Writer {
+    private final File spillFile;
+    private final Writer spill;
+    private final char[] ring;
+    @Nullable
+    private final PrintStream forward;
+    private final List<? extends LineListener> listeners;
+    private final StringBuilder currentLine = new StringBuilder();
+    private int ringStart;
+    private int ringSize;
+    private boolean closed;
+
+    BuildOutputSink(File spillFile, int bufferChars, @Nullable PrintStream forward,
+                    List<? extends LineListener> listeners) throws IOException {
+        this.spillFile = spillFile;
+        this.spill = new BufferedWriter(new OutputStreamWriter(Files.newOutputStream(spillFile.toPath()),
+                StandardCharsets.UTF_8));
+        this.ring = new char[Math.max(1, bufferChars)];
+        this.forward = forward;
+        this.listeners = listeners;
+    }
+
+    @Override
+    public synchronized void write(char[] cbuf, int off, int len) throws IOException {
+        spill.write(cbuf, off, len);
+        if (forward != null) {
+            forward.print(new String(cbuf, off, len));
+        }
+        for (int i = off; i < off + len; i++) {
+            final char c = cbuf[i];
+            appendToRing(c);
+            if (c == '\n') {
+                dispatchLine();
+            } else if (c != '\r') {
+                currentLine.append(c);
+            }
+        }
+    }
+
+    private void appendToRing(char c) {
+        final int end = (ringStart + ringSize) % ring.length;
+        ring[end] = c;
+        if (ringSize < ring.length) {
+            ringSize++;
+        } else {
+            ringStart = (ringStart + 1) % ring.length;
+        }
+    }
+
+    private void dispatchLine() {
+        final String line = currentLine.toString();
+        currentLine.setLength(0);
+        for (LineListener listener : listeners) {
+            listener.onLine(line);
+        }
+    }
+
+    @Override
+    public synchronized void flush() throws IOException {
+        spill.flush();
+        if (forward != null) {
+            forward.flush();
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (currentLine.length() > 0) {
+            dispatchLine();
+        }
+        spill.close();
+        if (forward != null) {
+            forward.flush();
+        }
+    }
+
+    /**
+     * @return at most the last buffer size chars of the output, without touching the spill file
+     */
+    synchronized String getTail() {
+        final StringBuilder builder = new StringBuilder(ringSize);
+        for (int i = 0; i < ringSize; i++) {
+            builder.append(ring[(ringStart + i) % ring.length]);
+        }
+        return builder.toString();
+    }
+
+    /**
+     * @return the whole output, read back from the spill file on every call so it is never held in memory
+     */
+    synchronized String getText() throws IOException {
+        if (!closed) {
+            spill.flush();
+        }
+        return new String(Files.readAllBytes(spillFile.toPath()), StandardCharsets.UTF_8);
+    }
+
+    interface LineListener {
+        void onLine(String line);
+    }
+}
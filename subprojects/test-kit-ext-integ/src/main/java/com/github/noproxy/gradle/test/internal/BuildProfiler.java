@@ -0,0 +1,139 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.noproxy.gradle.test.internal;
+
+import com.github.noproxy.gradle.test.api.BuildProfile;
+import org.apache.commons.io.FileUtils;
+import org.gradle.testkit.runner.TaskOutcome;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.github.noproxy.gradle.test.internal.Actions.execute;
+import static com.github.noproxy.gradle.test.internal.Actions.setText;
+
+/**
+ * Records a {@link BuildProfile} by an init script which listens to the build from inside and writes
+ * the timings to a file when the build finished.
+ * <p>
+ * The configuration phase is measured from the evaluation of the init script to the task graph being ready, its
+ * allocation is the difference of the bytes allocated by the live threads of the daemon, -1 if the JVM cannot tell.
+ */
+class BuildProfiler {
+    private static final String CONFIGURATION = "configuration";
+    private static final String TASK = "task";
+    private static final String INIT_SCRIPT = ""
+            + "def profileFile = new File('%s')\n"
+            + "def threads = java.lang.management.ManagementFactory.threadMXBean\n"
+            + "def allocatedBytes = {\n"
+            + "    if (!(threads instanceof com.sun.management.ThreadMXBean)"
+            + " || !threads.threadAllocatedMemorySupported || !threads.threadAllocatedMemoryEnabled) {\n"
+            + "        return -1L\n"
+            + "    }\n"
+            + "    threads.getThreadAllocatedBytes(threads.allThreadIds).findAll { it > 0 }.sum(0L)\n"
+            + "}\n"
+            + "def buildStart = System.currentTimeMillis()\n"
+            + "def allocationStart = allocatedBytes()\n"
+            + "def configurationEnd = buildStart\n"
+            + "def configurationAllocated = -1L\n"
+            + "def taskStarts = new java.util.concurrent.ConcurrentHashMap()\n"
+            + "def records = Collections.synchronizedList([])\n"
+            + "gradle.taskGraph.whenReady {\n"
+            + "    configurationEnd = System.currentTimeMillis()\n"
+            + "    def allocationEnd = allocatedBytes()\n"
+            + "    configurationAllocated = allocationStart < 0 || allocationEnd < 0 ?\n"
+            + "            -1L : allocationEnd - allocationStart\n"
+            + "}\n"
+            + "gradle.taskGraph.beforeTask { task ->\n"
+            + "    taskStarts[task.path] = System.currentTimeMillis()\n"
+            + "}\n"
+            + "gradle.taskGraph.afterTask { task, state ->\n"
+            + "    def end = System.currentTimeMillis()\n"
+            + "    def outcome = state.failure != null ? 'FAILED'\n"
+            + "            : state.skipMessage == 'FROM-CACHE' ? 'FROM_CACHE'\n"
+            + "            : state.noSource ? 'NO_SOURCE'\n"
+            + "            : state.upToDate ? 'UP_TO_DATE'\n"
+            + "            : state.skipped ? 'SKIPPED'\n"
+            + "            : 'SUCCESS'\n"
+            + "    records << \"" + TASK + "\\t${task.path}\\t${taskStarts[task.path] ?: end}\\t${end}\\t${outcome}\"\n"
+            + "}\n"
+            + "gradle.buildFinished {\n"
+            + "    def lines = [\"" + CONFIGURATION + "\\t${buildStart}\\t${configurationEnd}\\t${configurationAllocated}\"]\n"
+            + "    synchronized (records) {\n"
+            + "        lines.addAll(records)\n"
+            + "    }\n"
+            + "    profileFile.text = lines.join('\\n')\n"
+            + "}\n";
+
+    private final File initScript;
+    private final File profileFile;
+
+    BuildProfiler(File dir) {
+        this.initScript = new File(dir, "profile.gradle");
+        this.profileFile = new File(dir, "profile.txt");
+        execute(initScript, setText(String.format(INIT_SCRIPT, profileFile.getAbsolutePath().replace('\\', '/'))));
+    }
+
+    File getInitScript() {
+        return initScript;
+    }
+
+    /**
+     * Forget the profile of the previous build, the directory is reused by every build of a runner.
+     */
+    void reset() {
+        FileUtils.deleteQuietly(profileFile);
+    }
+
+    /**
+     * @return the recorded profile, or null if the build did not get far enough to write it
+     */
+    @Nullable
+    BuildProfile read() {
+        if (!profileFile.isFile()) {
+            return null;
+        }
+
+        final List<String> lines;
+        try {
+            lines = Files.readAllLines(profileFile.toPath(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        long configurationMillis = 0;
+        long configurationAllocatedBytes = -1;
+        final List<BuildProfile.TaskProfile> tasks = new ArrayList<>();
+        for (String line : lines) {
+            final String[] columns = line.split("\t");
+            if (CONFIGURATION.equals(columns[0])) {
+                configurationMillis = Long.parseLong(columns[2]) - Long.parseLong(columns[1]);
+                configurationAllocatedBytes = Long.parseLong(columns[3]);
+            } else if (TASK.equals(columns[0])) {
+                tasks.add(new DefaultBuildProfile.DefaultTaskProfile(columns[1],
+                        Long.parseLong(columns[2]), Long.parseLong(columns[3]), TaskOutcome.valueOf(columns[4])));
+            }
+        }
+        return new DefaultBuildProfile(configurationMillis, configurationAllocatedBytes, tasks);
+    }
+}
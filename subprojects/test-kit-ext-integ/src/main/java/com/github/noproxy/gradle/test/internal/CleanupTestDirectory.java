@@ -24,10 +24,31 @@ import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.lang.annotation.Target;
 
+/**
+ * What happens to the test directory of a failed test, the policy can be overridden for all specifications by system
+ * property {@code noproxy.testdir.onFailure}.
+ */
 @Inherited
 @Retention(RetentionPolicy.RUNTIME)
 @Target({ElementType.TYPE})
 @ExtensionAnnotation(CleanupTestDirectoryExtension.class)
 public @interface CleanupTestDirectory {
     String fieldName() default "testDirectoryProvider";
+
+    OnFailure onFailure() default OnFailure.ARCHIVE;
+
+    enum OnFailure {
+        /**
+         * Keep the whole test directory.
+         */
+        KEEP,
+        /**
+         * Archive the relevant parts of the test directory in the background, and delete it.
+         */
+        ARCHIVE,
+        /**
+         * Delete the test directory.
+         */
+        DELETE
+    }
 }
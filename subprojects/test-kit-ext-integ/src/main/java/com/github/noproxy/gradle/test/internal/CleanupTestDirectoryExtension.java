@@ -16,6 +16,7 @@
 
 package com.github.noproxy.gradle.test.internal;
 
+import com.github.noproxy.gradle.test.internal.CleanupTestDirectory.OnFailure;
 import org.spockframework.runtime.AbstractRunListener;
 import org.spockframework.runtime.GroovyRuntimeUtil;
 import org.spockframework.runtime.IRunListener;
@@ -25,37 +26,65 @@ import org.spockframework.runtime.extension.IMethodInvocation;
 import org.spockframework.runtime.model.ErrorInfo;
 import org.spockframework.runtime.model.SpecInfo;
 
+import java.util.Locale;
+
 public class CleanupTestDirectoryExtension extends AbstractAnnotationDrivenExtension<CleanupTestDirectory> {
+    private static final String ON_FAILURE_PROPERTY = "noproxy.testdir.onFailure";
+
     @Override
     public void visitSpecAnnotation(CleanupTestDirectory annotation, SpecInfo spec) {
+        final String override = System.getProperty(ON_FAILURE_PROPERTY);
+        final OnFailure onFailure = override == null
+                ? annotation.onFailure() : OnFailure.valueOf(override.toUpperCase(Locale.ROOT));
         spec.getFeatures().forEach(feature ->
-                feature.addIterationInterceptor(new FailureCleanupInterceptor(annotation.fieldName())));
+                feature.addIterationInterceptor(new FailureCleanupInterceptor(annotation.fieldName(), onFailure)));
     }
 
     private static class FailureCleanupInterceptor implements IMethodInterceptor {
         private final String fieldName;
+        private final OnFailure onFailure;
 
-        FailureCleanupInterceptor(String fieldName) {
+        FailureCleanupInterceptor(String fieldName, OnFailure onFailure) {
             this.fieldName = fieldName;
+            this.onFailure = onFailure;
         }
 
         @Override
         public void intercept(IMethodInvocation invocation) throws Throwable {
-            IRunListener noCleanupOnErrorListener = new AbstractRunListener() {
+            IRunListener onErrorListener = new AbstractRunListener() {
                 @Override
                 public void error(ErrorInfo error) {
                     AbstractTestDirectoryProvider provider =
                             (AbstractTestDirectoryProvider) GroovyRuntimeUtil.
                                     getProperty(invocation.getInstance(), fieldName);
-                    provider.suppressCleanup();
+                    switch (onFailure) {
+                        case KEEP:
+                            provider.suppressCleanup();
+                            break;
+                        case ARCHIVE:
+                            provider.archiveOnFailure();
+                            break;
+                        default:
+                            provider.cleanupOnFailure();
+                            break;
+                    }
                 }
             };
             SpecInfo spec = invocation.getSpec();
             while (spec != null) {
-                spec.addListener(noCleanupOnErrorListener);
+                spec.addListener(onErrorListener);
                 spec = spec.getSubSpec();
             }
-            invocation.proceed();
+            try {
+                invocation.proceed();
+            } finally {
+                // the errors of later iterations belong to the providers of their own instances
+                spec = invocation.getSpec();
+                while (spec != null) {
+                    spec.getListeners().remove(onErrorListener);
+                    spec = spec.getSubSpec();
+                }
+            }
         }
     }
 }
@@ -0,0 +1,135 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.noproxy.gradle.test.internal;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Closes the closeables of an integrator, every one after the closeables it depends on, the independent ones
+ * concurrently.
+ * <p>
+ * Children are closed before their parent because a parent closes its own scheduler first. All schedulers share a
+ * fork-join pool of {@code noproxy.integrator.closeParallelism} threads, the number of processors by default; nested
+ * schedulers join their tasks from the pool threads, which the pool compensates for. Every closeable is closed even
+ * if others failed, the failures are reported together by a {@link CloseFailedException}.
+ */
+class CloseScheduler {
+    private static final String PARALLELISM_PROPERTY = "noproxy.integrator.closeParallelism";
+    private static final ForkJoinPool POOL = new ForkJoinPool(
+            Math.max(1, Integer.getInteger(PARALLELISM_PROPERTY, Runtime.getRuntime().availableProcessors())));
+    private final Map<Closeable, Set<Closeable>> dependencies = new LinkedHashMap<>();
+
+    /**
+     * @param dependencies closeables of the same scheduler to close before this one, others are ignored
+     */
+    synchronized void add(Closeable closeable, Closeable... dependencies) {
+        this.dependencies.computeIfAbsent(closeable, key -> new LinkedHashSet<>())
+                .addAll(Arrays.asList(dependencies));
+    }
+
+    void closeAll() throws IOException {
+        final Map<Closeable, Set<Closeable>> snapshot;
+        synchronized (this) {
+            snapshot = new LinkedHashMap<>(dependencies);
+        }
+        if (snapshot.isEmpty()) {
+            return;
+        }
+        checkAcyclic(snapshot);
+
+        final ConcurrentLinkedQueue<Throwable> failures = new ConcurrentLinkedQueue<>();
+        final Map<Closeable, ForkJoinTask<?>> tasks = new HashMap<>();
+        for (Closeable closeable : snapshot.keySet()) {
+            tasks.put(closeable, ForkJoinTask.adapt(() -> {
+                for (Closeable dependency : snapshot.get(closeable)) {
+                    final ForkJoinTask<?> task = tasks.get(dependency);
+                    if (task != null) {
+                        task.join();
+                    }
+                }
+                try {
+                    closeable.close();
+                } catch (Throwable e) {
+                    failures.add(e);
+                }
+            }));
+        }
+
+        final Runnable closeAll = () -> {
+            // forked in insertion order, joined again by their dependents
+            tasks.values().forEach(ForkJoinTask::fork);
+            snapshot.keySet().forEach(closeable -> tasks.get(closeable).join());
+        };
+        // a task of another pool, like the common one, must not fork into it
+        if (ForkJoinTask.getPool() == POOL) {
+            closeAll.run();
+        } else {
+            POOL.invoke(ForkJoinTask.adapt(closeAll));
+        }
+
+        if (!failures.isEmpty()) {
+            throw new CloseFailedException(new ArrayList<>(failures));
+        }
+    }
+
+    private static void checkAcyclic(Map<Closeable, Set<Closeable>> dependencies) {
+        final Set<Closeable> done = new HashSet<>();
+        for (Closeable closeable : dependencies.keySet()) {
+            visit(closeable, dependencies, done, new LinkedHashSet<>());
+        }
+    }
+
+    private static void visit(Closeable closeable, Map<Closeable, Set<Closeable>> dependencies, Set<Closeable> done,
+                              Set<Closeable> path) {
+        if (done.contains(closeable) || !dependencies.containsKey(closeable)) {
+            return;
+        }
+        if (!path.add(closeable)) {
+            throw new IllegalStateException("closeables depend on each other: " + path);
+        }
+        for (Closeable dependency : dependencies.get(closeable)) {
+            visit(dependency, dependencies, done, path);
+        }
+        path.remove(closeable);
+        done.add(closeable);
+    }
+
+    /**
+     * Thrown when some closeables failed to close, the first failure is the cause and the others are suppressed.
+     */
+    static class CloseFailedException extends IOException {
+        CloseFailedException(List<Throwable> failures) {
+            super(failures.size() + " closeable(s) failed to close, first: " + failures.get(0), failures.get(0));
+            for (Throwable failure : failures.subList(1, failures.size())) {
+                addSuppressed(failure);
+            }
+        }
+    }
+}
@@ -0,0 +1,269 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.noproxy.gradle.test.internal;
+
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+/**
+ * A cache of compiled fixture classes, shared by all test workers and test runs until the build directory is cleaned.
+ * <p>
+ * Jars are compiled in isolation, so the key hashes everything a compilation can see: the sources, the stub classes
+ * on its classpath, the compiler options, the JDK and the classpath jars by path, size and modification time.
+ * Classpath directories, such as the test classes which change on every edit, are keyed by path only: an entry
+ * records the package directories javac listed and the files it read from them, and a hit is only served while
+ * their content is unchanged. Fingerprints are computed once per JVM since the test classpath does not change while
+ * it runs.
+ * <p>
+ * Every entry is a single file published by an atomic move, so concurrent workers either see a whole entry or none.
+ * <p>
+ * Entries are touched on every hit and the least recently used are evicted when the cache grows over
+ * {@code noproxy.javac.cacheMaxMb} megabytes, 256 by default. System property {@code noproxy.javac.cache=false}
+ * disables the cache.
+ */
+class CompiledClassCache {
+    private static final String CACHE_DIR_PROPERTY = "noproxy.javac.cacheDir";
+    private static final String MAX_SIZE_PROPERTY = "noproxy.javac.cacheMaxMb";
+    private static final String ENABLED_PROPERTY = "noproxy.javac.cache";
+    private static final String DEFAULT_CACHE_DIR = "build/tmp/javac-cache";
+    private static final String ENTRY_SUFFIX = ".classes";
+    // bump when the entry format changes
+    private static final int FORMAT_VERSION = 2;
+    private static final CompiledClassCache SHARED = new CompiledClassCache(
+            new File(System.getProperty(CACHE_DIR_PROPERTY, DEFAULT_CACHE_DIR)).getAbsoluteFile(),
+            Long.getLong(MAX_SIZE_PROPERTY, 256) * 1024 * 1024,
+            Boolean.parseBoolean(System.getProperty(ENABLED_PROPERTY, "true")));
+
+    private final Map<String, String> classpathFingerprints = new ConcurrentHashMap<>();
+    private final Map<File, String> inputStates = new ConcurrentHashMap<>();
+    private final File cacheDir;
+    private final long maxSizeBytes;
+    private final boolean enabled;
+
+    CompiledClassCache(File cacheDir, long maxSizeBytes, boolean enabled) {
+        this.cacheDir = cacheDir;
+        this.maxSizeBytes = maxSizeBytes;
+        this.enabled = enabled;
+    }
+
+    static CompiledClassCache shared() {
+        return SHARED;
+    }
+
+    private static String fingerprint(String entry) {
+        final Path path = new File(entry).toPath();
+        if (!Files.exists(path)) {
+            return entry + ":missing";
+        }
+        if (Files.isDirectory(path)) {
+            // the inputs read from it are recorded in the entry
+            return entry + ":directory";
+        }
+        final Hasher hasher = Hashing.sha256().newHasher().putString(entry, StandardCharsets.UTF_8);
+        try (Stream<Path> files = Files.walk(path)) {
+            files.filter(Files::isRegularFile).sorted().forEach(file -> {
+                try {
+                    hasher.putString(path.relativize(file).toString(), StandardCharsets.UTF_8)
+                            .putLong(Files.size(file))
+                            .putLong(Files.getLastModifiedTime(file).toMillis());
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return hasher.hash().toString();
+    }
+
+    /**
+     * @return the hash of the content of a file, or of the names in a directory
+     */
+    private static String stateOf(File input) {
+        final Path path = input.toPath();
+        try {
+            if (Files.isRegularFile(path)) {
+                return Hashing.sha256().hashBytes(Files.readAllBytes(path)).toString();
+            }
+            if (Files.isDirectory(path)) {
+                final Hasher hasher = Hashing.sha256().newHasher();
+                try (Stream<Path> children = Files.list(path)) {
+                    children.map(child -> child.getFileName().toString()).sorted()
+                            .forEach(name -> hasher.putString(name, StandardCharsets.UTF_8).putByte((byte) 0));
+                }
+                return hasher.hash().toString();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return "missing";
+    }
+
+    boolean isEnabled() {
+        return enabled;
+    }
+
+    String keyOf(Map<String, String> sources, Map<String, byte[]> classpathClasses, List<String> options) {
+        final Hasher hasher = Hashing.sha256().newHasher()
+                .putInt(FORMAT_VERSION)
+                .putString(System.getProperty("java.vm.vendor", ""), StandardCharsets.UTF_8)
+                .putString(System.getProperty("java.version", ""), StandardCharsets.UTF_8);
+        for (int i = 0; i < options.size(); i++) {
+            final String option = options.get(i);
+            hasher.putString(option, StandardCharsets.UTF_8);
+            if (("-classpath".equals(option) || "-cp".equals(option)) && i + 1 < options.size()) {
+                for (String entry : options.get(i + 1).split(File.pathSeparator)) {
+                    if (!entry.isEmpty()) {
+                        hasher.putString(classpathFingerprints.computeIfAbsent(entry, CompiledClassCache::fingerprint),
+                                StandardCharsets.UTF_8);
+                    }
+                }
+            }
+        }
+        // the declaration order does not change the classes
+        new TreeMap<>(sources).forEach((className, source) -> hasher
+                .putString(className, StandardCharsets.UTF_8)
+                .putString(source, StandardCharsets.UTF_8));
+        new TreeMap<>(classpathClasses).forEach((className, bytes) -> hasher
+                .putString(className, StandardCharsets.UTF_8)
+                .putBytes(bytes));
+        return hasher.hash().toString();
+    }
+
+    /**
+     * @return the cached classes by binary class name, or null on a miss or when a classpath input the classes were
+     * compiled from changed
+     */
+    @Nullable
+    Map<String, byte[]> get(String key) {
+        final Path entry = entryOf(key);
+        if (!Files.isRegularFile(entry)) {
+            return null;
+        }
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(entry)))) {
+            final int inputs = input.readInt();
+            for (int i = 0; i < inputs; i++) {
+                final File file = new File(input.readUTF());
+                if (!input.readUTF().equals(inputStates.computeIfAbsent(file, CompiledClassCache::stateOf))) {
+                    return null;
+                }
+            }
+            final int count = input.readInt();
+            final Map<String, byte[]> classes = new LinkedHashMap<>(count * 2);
+            for (int i = 0; i < count; i++) {
+                final String className = input.readUTF();
+                final byte[] bytes = new byte[input.readInt()];
+                input.readFully(bytes);
+                classes.put(className, bytes);
+            }
+            Files.setLastModifiedTime(entry, FileTime.fromMillis(System.currentTimeMillis()));
+            return classes;
+        } catch (IOException e) {
+            // evicted by another worker meanwhile
+            return null;
+        }
+    }
+
+    /**
+     * @param classpathInputs the package directories listed and the files read from the classpath directories
+     */
+    void put(String key, Map<String, byte[]> classes, Collection<File> classpathInputs) {
+        try {
+            Files.createDirectories(cacheDir.toPath());
+            final Path staging = cacheDir.toPath().resolve(key + "." + UUID.randomUUID() + ".tmp");
+            try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(staging)))) {
+                output.writeInt(classpathInputs.size());
+                for (File input : classpathInputs) {
+                    output.writeUTF(input.getPath());
+                    output.writeUTF(inputStates.computeIfAbsent(input, CompiledClassCache::stateOf));
+                }
+                output.writeInt(classes.size());
+                for (Map.Entry<String, byte[]> entry : classes.entrySet()) {
+                    output.writeUTF(entry.getKey());
+                    output.writeInt(entry.getValue().length);
+                    output.write(entry.getValue());
+                }
+            }
+            Files.move(staging, entryOf(key), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            evict();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private Path entryOf(String key) {
+        return cacheDir.toPath().resolve(key + ENTRY_SUFFIX);
+    }
+
+    /**
+     * Delete the least recently used entries until the cache fits its size, entries being deleted by other workers
+     * concurrently are skipped.
+     */
+    private void evict() throws IOException {
+        final List<Path> entries = new ArrayList<>();
+        final Map<Path, long[]> attributes = new LinkedHashMap<>();
+        long total = 0;
+        try (DirectoryStream<Path> children = Files.newDirectoryStream(cacheDir.toPath(), "*" + ENTRY_SUFFIX)) {
+            for (Path child : children) {
+                try {
+                    final long size = Files.size(child);
+                    attributes.put(child, new long[]{size, Files.getLastModifiedTime(child).toMillis()});
+                    entries.add(child);
+                    total += size;
+                } catch (IOException e) {
+                    // deleted meanwhile
+                }
+            }
+        }
+        if (total <= maxSizeBytes) {
+            return;
+        }
+
+        entries.sort((first, second) -> Long.compare(attributes.get(first)[1], attributes.get(second)[1]));
+        for (Path entry : entries) {
+            if (total <= maxSizeBytes) {
+                break;
+            }
+            Files.deleteIfExists(entry);
+            total -= attributes.get(entry)[0];
+        }
+    }
+}
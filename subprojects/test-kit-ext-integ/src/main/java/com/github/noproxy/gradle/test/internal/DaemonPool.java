@@ -0,0 +1,262 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.noproxy.gradle.test.internal;
+
+import com.github.noproxy.gradle.test.api.FileIntegrator;
+import org.apache.commons.io.FileUtils;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static com.github.noproxy.gradle.test.internal.Actions.execute;
+import static com.github.noproxy.gradle.test.internal.Actions.setText;
+
+/**
+ * A pool of warm TestKit daemons shared by every runner in the test JVM.
+ * <p>
+ * TestKit starts one daemon per test-kit directory and reuses it for every compatible build, so a slot of the pool is
+ * just a test-kit directory. Slots are keyed by Gradle version, one runner leases a slot for one build, and a slot is
+ * recycled (moved to a fresh test-kit directory, the old daemon stops when its idle timeout expires) once it ran
+ * {@code noproxy.daemon.maxBuilds} builds or its daemon reported more than {@code noproxy.daemon.maxHeapMb} used heap.
+ * <p>
+ * The directory of a recycled generation, or of a generation left over by a previous run, is deleted once its daemon
+ * has stopped, one idle timeout plus a grace period after it was retired, and at the latest when the JVM shuts down.
+ */
+public class DaemonPool {
+    private static final String MAX_BUILDS_PROPERTY = "noproxy.daemon.maxBuilds";
+    private static final String MAX_HEAP_PROPERTY = "noproxy.daemon.maxHeapMb";
+    private static final String IDLE_TIMEOUT_PROPERTY = "noproxy.daemon.idleTimeoutMillis";
+    private static final int DEFAULT_MAX_BUILDS = 50;
+    private static final long DEFAULT_MAX_HEAP_MB = 1024;
+    private static final long DEFAULT_IDLE_TIMEOUT_MILLIS = 60_000;
+    private static final long STOP_GRACE_MILLIS = 10_000;
+    private static final String CURRENT_VERSION_KEY = "current";
+    private static final String GENERATION_PREFIX = "generation-";
+    private static final DaemonPool SHARED = new DaemonPool(
+            TestWorkers.getDaemonPoolDir(),
+            Integer.getInteger(MAX_BUILDS_PROPERTY, DEFAULT_MAX_BUILDS),
+            Long.getLong(MAX_HEAP_PROPERTY, DEFAULT_MAX_HEAP_MB) * 1024 * 1024,
+            Long.getLong(IDLE_TIMEOUT_PROPERTY, DEFAULT_IDLE_TIMEOUT_MILLIS));
+
+    private final File baseDir;
+    private final int maxBuilds;
+    private final long maxHeapBytes;
+    private final long idleTimeoutMillis;
+    private final Map<String, Deque<Slot>> idleSlots = new HashMap<>();
+    private final Map<String, Integer> slotCounts = new HashMap<>();
+    // generation dirs waiting for their daemon to stop, and when it is stopped for sure
+    private final Map<File, Long> retired = new LinkedHashMap<>();
+
+    DaemonPool(File baseDir, int maxBuilds, long maxHeapBytes, long idleTimeoutMillis) {
+        this.baseDir = baseDir.getAbsoluteFile();
+        this.maxBuilds = maxBuilds;
+        this.maxHeapBytes = maxHeapBytes;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        Runtime.getRuntime().addShutdownHook(new Thread(this::deleteRetired, "daemon-pool-cleanup"));
+    }
+
+    public static DaemonPool shared() {
+        return SHARED;
+    }
+
+    private static String keyOf(@Nullable String gradleVersion) {
+        return gradleVersion == null ? CURRENT_VERSION_KEY : gradleVersion;
+    }
+
+    /**
+     * Leases an idle slot for the given Gradle version, or creates a new one when all slots are busy.
+     * The lease must be released after the build, even if the build failed.
+     */
+    public Lease lease(@Nullable String gradleVersion) {
+        return lease(gradleVersion, true);
+    }
+
+    /**
+     * @param recycling false to keep the slot after the build whatever its build count and heap usage, so a series of
+     *                  measured builds all run in the same warm daemon
+     */
+    public synchronized Lease lease(@Nullable String gradleVersion, boolean recycling) {
+        deleteStopped();
+        final String key = keyOf(gradleVersion);
+        final Slot idle = idleSlots.computeIfAbsent(key, k -> new ArrayDeque<>()).pollFirst();
+        if (idle != null) {
+            return new Lease(idle, recycling);
+        }
+
+        final int index = slotCounts.merge(key, 1, Integer::sum) - 1;
+        final Slot slot = new Slot(key, new File(baseDir, FileIntegrator.join(key, "slot-" + index)));
+        slot.retireLeftovers();
+        return new Lease(slot, recycling);
+    }
+
+    private synchronized void release(Slot slot, boolean recycling) {
+        slot.builds++;
+        final long usedHeap = slot.readUsedHeap();
+        if (recycling && (slot.builds >= maxBuilds || usedHeap >= maxHeapBytes)) {
+            slot.recycle();
+        }
+        idleSlots.computeIfAbsent(slot.key, k -> new ArrayDeque<>()).addFirst(slot);
+        deleteStopped();
+    }
+
+    private void retire(File generationDir) {
+        retired.put(generationDir, System.currentTimeMillis() + idleTimeoutMillis + STOP_GRACE_MILLIS);
+    }
+
+    private void deleteStopped() {
+        final long now = System.currentTimeMillis();
+        final Iterator<Map.Entry<File, Long>> iterator = retired.entrySet().iterator();
+        while (iterator.hasNext()) {
+            final Map.Entry<File, Long> entry = iterator.next();
+            if (entry.getValue() <= now) {
+                FileUtils.deleteQuietly(entry.getKey());
+                iterator.remove();
+            }
+        }
+    }
+
+    private synchronized void deleteRetired() {
+        // the daemons may still be idle, they do not need their directory to stop
+        retired.keySet().forEach(FileUtils::deleteQuietly);
+        retired.clear();
+    }
+
+    /**
+     * A slot leased by one runner for one build.
+     */
+    public final class Lease {
+        private final Slot slot;
+        private final boolean recycling;
+        private boolean released;
+
+        private Lease(Slot slot, boolean recycling) {
+            this.slot = slot;
+            this.recycling = recycling;
+            slot.prepare();
+        }
+
+        /**
+         * @return the directory to pass to {@code GradleRunner.withTestKitDir}
+         */
+        public File getTestKitDir() {
+            return slot.getTestKitDir();
+        }
+
+        /**
+         * @return an init script reporting the daemon heap usage back to the pool, pass it with {@code --init-script}
+         */
+        public File getHeapProbeScript() {
+            return slot.getHeapProbeScript();
+        }
+
+        public void release() {
+            if (released) {
+                return;
+            }
+            released = true;
+            DaemonPool.this.release(slot, recycling);
+        }
+    }
+
+    private final class Slot {
+        private final String key;
+        private final File dir;
+        private int generation;
+        private int builds;
+
+        Slot(String key, File dir) {
+            this.key = key;
+            this.dir = dir;
+        }
+
+        File getGenerationDir() {
+            return new File(dir, GENERATION_PREFIX + generation);
+        }
+
+        File getTestKitDir() {
+            return new File(getGenerationDir(), "test-kit");
+        }
+
+        File getHeapProbeScript() {
+            return new File(getGenerationDir(), "heap-probe.gradle");
+        }
+
+        File getHeapReport() {
+            return new File(getGenerationDir(), "heap.txt");
+        }
+
+        void prepare() {
+            if (getHeapProbeScript().exists()) {
+                return;
+            }
+
+            final File testKitDir = getTestKitDir();
+            execute(testKitDir, Actions.mkdirs());
+            // Let the daemons of recycled slots stop by themselves, nobody will connect to them again.
+            execute(new File(testKitDir, "gradle.properties"),
+                    setText("org.gradle.daemon.idletimeout=" + idleTimeoutMillis + "\n"));
+
+            final String reportPath = getHeapReport().getAbsolutePath().replace('\\', '/');
+            execute(getHeapProbeScript(), setText("gradle.buildFinished {\n"
+                    + "    def runtime = Runtime.runtime\n"
+                    + "    new File('" + reportPath + "').text = String.valueOf(runtime.totalMemory() - runtime.freeMemory())\n"
+                    + "}\n"));
+        }
+
+        long readUsedHeap() {
+            final File report = getHeapReport();
+            if (!report.isFile()) {
+                return 0;
+            }
+            try {
+                return Long.parseLong(new String(Files.readAllBytes(report.toPath()), StandardCharsets.UTF_8).trim());
+            } catch (IOException | NumberFormatException e) {
+                return 0;
+            }
+        }
+
+        void retireLeftovers() {
+            final File[] generations = dir.listFiles((parent, name) -> name.startsWith(GENERATION_PREFIX));
+            if (generations == null) {
+                return;
+            }
+            for (File generationDir : generations) {
+                if (!generationDir.equals(getGenerationDir())) {
+                    retire(generationDir);
+                }
+            }
+        }
+
+        void recycle() {
+            retire(getGenerationDir());
+            // never reuse a retired generation of a previous run, it is about to be deleted
+            do {
+                generation++;
+            } while (retired.containsKey(getGenerationDir()));
+            builds = 0;
+        }
+    }
+}
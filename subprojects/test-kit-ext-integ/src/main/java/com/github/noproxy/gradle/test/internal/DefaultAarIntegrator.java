@@ -35,7 +35,9 @@ class DefaultAarIntegrator extends DefaultZipIntegrator implements AarIntegrator
         final File classes = file("classes.jar");
 
         closure = (Closure) closure.clone();
-        closure.setDelegate(Integrators.jar(classes, this));
+        final DefaultJarIntegrator jar = Integrators.jar(classes, this);
+        copyOptionsTo(jar);
+        closure.setDelegate(jar);
         closure.call();
         return classes;
     }
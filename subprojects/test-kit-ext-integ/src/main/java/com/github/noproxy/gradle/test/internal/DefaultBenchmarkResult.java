@@ -0,0 +1,123 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.noproxy.gradle.test.internal;
+
+import com.github.noproxy.gradle.test.api.BenchmarkResult;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+import static com.github.noproxy.gradle.test.internal.Actions.execute;
+import static com.github.noproxy.gradle.test.internal.Actions.mkdirs;
+import static com.github.noproxy.gradle.test.internal.Actions.setText;
+
+class DefaultBenchmarkResult implements BenchmarkResult {
+    private static final double BYTES_PER_MB = 1024 * 1024;
+    private final String name;
+    private final List<Long> configurationMillis;
+    private final List<Long> sortedMillis;
+    private final List<Long> allocatedBytes;
+    private final File reportFile;
+
+    DefaultBenchmarkResult(String name, List<Long> configurationMillis, List<Long> allocatedBytes, File reportFile) {
+        this.name = name;
+        this.configurationMillis = Collections.unmodifiableList(configurationMillis);
+        this.allocatedBytes = Collections.unmodifiableList(allocatedBytes);
+        this.reportFile = reportFile;
+        final List<Long> sorted = new ArrayList<>(configurationMillis);
+        Collections.sort(sorted);
+        this.sortedMillis = sorted;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public List<Long> getConfigurationMillis() {
+        return configurationMillis;
+    }
+
+    @Override
+    public double getMeanMillis() {
+        return configurationMillis.stream().mapToLong(Long::longValue).average().orElse(0);
+    }
+
+    @Override
+    public long getPercentileMillis(double percentile) {
+        if (percentile <= 0 || percentile > 100) {
+            throw new IllegalArgumentException("percentile must be in (0, 100], was " + percentile);
+        }
+        final int rank = (int) Math.ceil(percentile / 100 * sortedMillis.size());
+        return sortedMillis.get(Math.max(rank, 1) - 1);
+    }
+
+    @Override
+    public long getAllocatedBytesPerIteration() {
+        return (long) allocatedBytes.stream().mapToLong(Long::longValue).filter(bytes -> bytes >= 0).average().orElse(-1);
+    }
+
+    @Override
+    public int getExcludedAllocationSamples() {
+        return (int) allocatedBytes.stream().filter(bytes -> bytes < 0).count();
+    }
+
+    @Override
+    public double getAllocationRateMbPerSecond() {
+        final long bytes = getAllocatedBytesPerIteration();
+        final double mean = getMeanMillis();
+        if (bytes < 0 || mean <= 0) {
+            return -1;
+        }
+        return bytes / BYTES_PER_MB / (mean / 1000);
+    }
+
+    @Override
+    public File getReportFile() {
+        return reportFile;
+    }
+
+    void writeReport(int warmUpIterations) {
+        final String json = "{\n"
+                + "  \"name\": " + Json.string(name) + ",\n"
+                + "  \"warmUpIterations\": " + warmUpIterations + ",\n"
+                + "  \"measuredIterations\": " + configurationMillis.size() + ",\n"
+                + "  \"meanMillis\": " + Json.number(getMeanMillis()) + ",\n"
+                + "  \"p50Millis\": " + getPercentileMillis(50) + ",\n"
+                + "  \"p90Millis\": " + getPercentileMillis(90) + ",\n"
+                + "  \"p99Millis\": " + getPercentileMillis(99) + ",\n"
+                + "  \"allocatedBytesPerIteration\": " + getAllocatedBytesPerIteration() + ",\n"
+                + "  \"allocationRateMbPerSecond\": " + Json.number(getAllocationRateMbPerSecond()) + ",\n"
+                + "  \"excludedAllocationSamples\": " + getExcludedAllocationSamples() + ",\n"
+                + "  \"configurationMillis\": " + configurationMillis + ",\n"
+                + "  \"allocatedBytes\": " + allocatedBytes + "\n"
+                + "}\n";
+        execute(reportFile.getParentFile(), mkdirs());
+        execute(reportFile, setText(json));
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.ROOT, "%s: mean %.1fms, p50 %dms, p90 %dms, p99 %dms, %d bytes allocated (%d samples excluded)",
+                name, getMeanMillis(), getPercentileMillis(50), getPercentileMillis(90), getPercentileMillis(99),
+                getAllocatedBytesPerIteration(), getExcludedAllocationSamples());
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.noproxy.gradle.test.internal;
+
+import com.github.noproxy.gradle.test.api.BuildProfile;
+import org.gradle.testkit.runner.TaskOutcome;
+import org.jetbrains.annotations.Nullable;
+import org.junit.Assert;
+
+import java.util.Collections;
+import java.util.List;
+
+class DefaultBuildProfile implements BuildProfile {
+    private final long configurationMillis;
+    private final long configurationAllocatedBytes;
+    private final List<TaskProfile> tasks;
+
+    DefaultBuildProfile(long configurationMillis, long configurationAllocatedBytes, List<TaskProfile> tasks) {
+        this.configurationMillis = configurationMillis;
+        this.configurationAllocatedBytes = configurationAllocatedBytes;
+        this.tasks = Collections.unmodifiableList(tasks);
+    }
+
+    @Override
+    public long getConfigurationMillis() {
+        return configurationMillis;
+    }
+
+    @Override
+    public long getConfigurationAllocatedBytes() {
+        return configurationAllocatedBytes;
+    }
+
+    @Override
+    public List<TaskProfile> getTasks() {
+        return tasks;
+    }
+
+    @Nullable
+    @Override
+    public TaskProfile task(String task) {
+        final String suffix = ":" + task;
+        for (TaskProfile profile : tasks) {
+            if (task.startsWith(":") ? profile.getPath().equals(task) : profile.getPath().endsWith(suffix)) {
+                return profile;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public void assertConfigurationFasterThan(long millis) {
+        Assert.assertTrue("configuration took " + configurationMillis + "ms, expected less than " + millis + "ms",
+                configurationMillis < millis);
+    }
+
+    @Override
+    public void assertTaskFasterThan(String task, long millis) {
+        final TaskProfile profile = task(task);
+        Assert.assertNotNull("task " + task + " was not executed", profile);
+        Assert.assertTrue("task " + profile.getPath() + " took " + profile.getDurationMillis()
+                        + "ms, expected less than " + millis + "ms",
+                profile.getDurationMillis() < millis);
+    }
+
+    static class DefaultTaskProfile implements TaskProfile {
+        private final String path;
+        private final long startMillis;
+        private final long endMillis;
+        private final TaskOutcome outcome;
+
+        DefaultTaskProfile(String path, long startMillis, long endMillis, TaskOutcome outcome) {
+            this.path = path;
+            this.startMillis = startMillis;
+            this.endMillis = endMillis;
+            this.outcome = outcome;
+        }
+
+        @Override
+        public String getPath() {
+            return path;
+        }
+
+        @Override
+        public long getStartMillis() {
+            return startMillis;
+        }
+
+        @Override
+        public long getEndMillis() {
+            return endMillis;
+        }
+
+        @Override
+        public long getDurationMillis() {
+            return endMillis - startMillis;
+        }
+
+        @Override
+        public TaskOutcome getOutcome() {
+            return outcome;
+        }
+
+        @Override
+        public String toString() {
+            return path + " " + outcome + " " + getDurationMillis() + "ms";
+        }
+    }
+}
@@ -16,20 +16,52 @@
 
 package com.github.noproxy.gradle.test.internal;
 
+import com.github.noproxy.gradle.test.api.BuildProfile;
 import com.github.noproxy.gradle.test.api.BuildRunner;
+import com.github.noproxy.gradle.test.api.ExecutionMode;
 import com.github.noproxy.gradle.test.api.FileIntegrator;
+import com.github.noproxy.gradle.test.api.OutputMatcher;
+import com.github.noproxy.gradle.test.api.RerunReport;
 import com.google.common.collect.Lists;
+import org.gradle.api.Action;
 import org.gradle.testkit.runner.BuildResult;
+import org.gradle.testkit.runner.BuildTask;
+import org.gradle.testkit.runner.TaskOutcome;
 import org.gradle.testkit.runner.UnexpectedBuildFailure;
 import org.gradle.testkit.runner.internal.DefaultGradleRunner;
 import org.jetbrains.annotations.Nullable;
 import org.junit.Assert;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static com.github.noproxy.gradle.test.internal.Actions.execute;
+import static com.github.noproxy.gradle.test.internal.Actions.setText;
 
 public class DefaultBuildRunner implements BuildRunner {
+    private static final String OUTPUT_BUFFER_PROPERTY = "noproxy.runner.outputBufferChars";
+    private static final int DEFAULT_OUTPUT_BUFFER_CHARS = 64 * 1024;
+    private static final String BUILD_CACHE_INIT_SCRIPT = ""
+            + "settingsEvaluated { settings ->\n"
+            + "    settings.buildCache {\n"
+            + "        local {\n"
+            + "            enabled = true\n"
+            + "            directory = new File('%s')\n"
+            + "        }\n"
+            + "    }\n"
+            + "}\n";
+    private static final String CONFIGURATION_CACHE_REUSED = "Reusing configuration cache.";
+    private static final Set<TaskOutcome> UP_TO_DATE_OUTCOMES =
+            EnumSet.of(TaskOutcome.UP_TO_DATE, TaskOutcome.SKIPPED, TaskOutcome.NO_SOURCE);
+    private static final Set<TaskOutcome> CACHED_OUTCOMES =
+            EnumSet.of(TaskOutcome.FROM_CACHE, TaskOutcome.UP_TO_DATE, TaskOutcome.SKIPPED, TaskOutcome.NO_SOURCE);
     private final FileIntegrator integrator;
 
     // runner parameters
@@ -37,12 +69,25 @@ public class DefaultBuildRunner implements BuildRunner {
     private boolean enableStackTrace = true;
     private boolean withPluginClasspath = true;
     private boolean forwardOutput = true;
+    private boolean profiling;
+    private boolean daemonRecycling = true;
     private String gradleVersion;
+    private ExecutionMode executionMode = ExecutionMode.getDefault();
+    private int outputBufferSize = Integer.getInteger(OUTPUT_BUFFER_PROPERTY, DEFAULT_OUTPUT_BUFFER_CHARS);
+    private final List<StreamingOutputMatcher> outputMatchers = Lists.newArrayList();
 
-    // build status
-    private String output;
-    private BuildResult result;
+    // build status, the BuildResult itself is not kept because it holds the whole output
+    private BuildOutputSink output;
+    private List<BuildTask> tasks;
+    private BuildProfile profile;
     private Throwable throwable;
+    @Nullable
+    private BuildCacheKeyRecorder cacheKeyRecorder;
+    // reused by every build, in the hidden directory so it is deleted with the test directory
+    @Nullable
+    private File outputFile;
+    @Nullable
+    private BuildProfiler profiler;
 
     @ParameterWillBeClosed
     public DefaultBuildRunner(FileIntegrator integrator) {
@@ -66,6 +111,30 @@ public class DefaultBuildRunner implements BuildRunner {
         buildArgument("--quiet");
     }
 
+    @Override
+    public void profile() {
+        this.profiling = true;
+    }
+
+    boolean isProfiling() {
+        return profiling;
+    }
+
+    void setProfiling(boolean profiling) {
+        this.profiling = profiling;
+    }
+
+    boolean isDaemonRecycling() {
+        return daemonRecycling;
+    }
+
+    /**
+     * @param daemonRecycling false to keep the leased daemons whatever their build count and heap usage
+     */
+    void setDaemonRecycling(boolean daemonRecycling) {
+        this.daemonRecycling = daemonRecycling;
+    }
+
     @Override
     public void setWithPluginClasspath(boolean withPluginClasspath) {
         this.withPluginClasspath = withPluginClasspath;
@@ -81,6 +150,35 @@ public class DefaultBuildRunner implements BuildRunner {
         this.forwardOutput = forward;
     }
 
+    @Override
+    public ExecutionMode getExecutionMode() {
+        return executionMode;
+    }
+
+    @Override
+    public void setExecutionMode(ExecutionMode executionMode) {
+        this.executionMode = executionMode;
+    }
+
+    @Override
+    public void setOutputBufferSize(int chars) {
+        this.outputBufferSize = chars;
+    }
+
+    @Override
+    public OutputMatcher outputContains(String text) {
+        final StreamingOutputMatcher matcher = StreamingOutputMatcher.contains(text);
+        outputMatchers.add(matcher);
+        return matcher;
+    }
+
+    @Override
+    public OutputMatcher outputMatches(String regex) {
+        final StreamingOutputMatcher matcher = StreamingOutputMatcher.matches(regex);
+        outputMatchers.add(matcher);
+        return matcher;
+    }
+
     @Closer
     @Override
     public void run(String... arguments) {
@@ -88,28 +186,70 @@ public class DefaultBuildRunner implements BuildRunner {
 
         // clean
         output = null;
-        result = null;
+        tasks = null;
+        profile = null;
         throwable = null;
+        outputMatchers.forEach(StreamingOutputMatcher::reset);
+
+        final ArrayList<String> computed = Lists.newArrayList(arguments);
+        computed.addAll(appendArguments);
+        if (isEnableStackTrace() && !computed.contains("--stacktrace")) {
+            computed.add("--stacktrace");
+        }
+
+        if (profiling) {
+            if (computed.contains("--configuration-cache")) {
+                throw new IllegalStateException("profile() cannot be combined with the configuration cache, the "
+                        + "profiling init script registers build listeners which it rejects");
+            }
+            if (profiler == null) {
+                profiler = new BuildProfiler(((FileIntegratorInternal) integrator).newTempDir("profile", "build"));
+            }
+            profiler.reset();
+            computed.add("--init-script");
+            computed.add(profiler.getInitScript().getAbsolutePath());
+        }
 
         final DefaultGradleRunner gradleRunner = new DefaultGradleRunner();
-        gradleRunner.withDebug(true);
+        @Nullable final DaemonPool.Lease lease;
+        if (executionMode == ExecutionMode.WARM_DAEMON) {
+            lease = DaemonPool.shared().lease(gradleVersion, daemonRecycling);
+            gradleRunner.withTestKitDir(lease.getTestKitDir());
+            computed.add("--init-script");
+            computed.add(lease.getHeapProbeScript().getAbsolutePath());
+        } else {
+            lease = null;
+            gradleRunner.withDebug(true);
+            final File testKitDir = TestWorkers.getInProcessTestKitDir();
+            if (testKitDir != null) {
+                gradleRunner.withTestKitDir(testKitDir);
+            }
+        }
         if (withPluginClasspath) {
             gradleRunner.withPluginClasspath();
         }
         if (gradleVersion != null) {
-            gradleRunner.withGradleVersion(gradleVersion);
-        }
-        if (forwardOutput) {
-            gradleRunner.forwardOutput();
+            GradleDistributions.shared().apply(gradleRunner, gradleVersion);
         }
         gradleRunner.withProjectDir(integrator.getRoot());
 
-        final ArrayList<String> computed = Lists.newArrayList(arguments);
-        computed.addAll(appendArguments);
-        if (isEnableStackTrace() && !computed.contains("--stacktrace")) {
-            computed.add("--stacktrace");
+        try {
+            if (outputFile == null) {
+                final File outputDir = ((FileIntegratorInternal) integrator).newTempDir("output", "build");
+                outputFile = new File(outputDir, "build-output.log");
+            }
+            final List<BuildOutputSink.LineListener> listeners = new ArrayList<>(outputMatchers);
+            if (cacheKeyRecorder != null) {
+                listeners.add(cacheKeyRecorder);
+            }
+            output = new BuildOutputSink(outputFile, outputBufferSize, forwardOutput ? System.out : null, listeners);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
         }
+        gradleRunner.forwardStdOutput(output);
+        gradleRunner.forwardStdError(output);
 
+        BuildResult result;
         try {
             result = gradleRunner
                     .withArguments(computed)
@@ -117,24 +257,123 @@ public class DefaultBuildRunner implements BuildRunner {
         } catch (UnexpectedBuildFailure failure) {
             result = failure.getBuildResult();
             throwable = failure;
+        } finally {
+            if (lease != null) {
+                lease.release();
+            }
+            Actions.close().execute(output);
+        }
+        tasks = Collections.unmodifiableList(new ArrayList<>(result.getTasks()));
+        if (profiling && profiler != null) {
+            profile = profiler.read();
+        }
+    }
+
+    @Closer
+    @Override
+    public RerunReport runTwice(String... tasksAndArguments) {
+        return rerun(Actions.nothing(), tasksAndArguments, tasksAndArguments, UP_TO_DATE_OUTCOMES, false);
+    }
+
+    @Closer
+    @Override
+    public RerunReport runTwice(Action<? super FileIntegrator> between, String... tasksAndArguments) {
+        return rerun(between, tasksAndArguments, tasksAndArguments, UP_TO_DATE_OUTCOMES, false);
+    }
+
+    @Closer
+    @Override
+    public RerunReport runWithCleanCacheHit(String... tasksAndArguments) {
+        // clean runs as a build of its own, its task always does work and is no part of the report
+        return rerun(ignored -> {
+            run("clean");
+            success();
+        }, tasksAndArguments, tasksAndArguments, CACHED_OUTCOMES, false);
+    }
+
+    @Closer
+    @Override
+    public RerunReport runWithConfigurationCache(String... tasksAndArguments) {
+        final String[] arguments = plusArguments("--configuration-cache", tasksAndArguments);
+        return rerun(Actions.nothing(), arguments, arguments, UP_TO_DATE_OUTCOMES, true);
+    }
+
+    private RerunReport rerun(Action<? super FileIntegrator> between, String[] first, String[] second,
+                              Set<TaskOutcome> reusedOutcomes, boolean configurationCache) {
+        // a build cache of its own, so neither the user's cache nor other tests can hit or pollute it
+        final File cacheDir = ((FileIntegratorInternal) integrator).newTempDir("build-cache", "build");
+        final File initScript = new File(cacheDir, "build-cache.gradle");
+        execute(initScript, setText(String.format(BUILD_CACHE_INIT_SCRIPT,
+                new File(cacheDir, "cache").getAbsolutePath().replace('\\', '/'))));
+        final String[] cacheArguments = {"--build-cache", "-Dorg.gradle.caching.debug=true",
+                "--init-script", initScript.getAbsolutePath()};
+
+        final Map<String, Map<String, String>> firstInputs = runRecordingCacheKeys(first, cacheArguments);
+        success();
+        between.execute(integrator);
+
+        final StreamingOutputMatcher reused = StreamingOutputMatcher.contains(CONFIGURATION_CACHE_REUSED);
+        outputMatchers.add(reused);
+        final Map<String, Map<String, String>> secondInputs;
+        try {
+            secondInputs = runRecordingCacheKeys(second, cacheArguments);
+        } finally {
+            outputMatchers.remove(reused);
+        }
+        return new DefaultRerunReport(tasks, reusedOutcomes, firstInputs, secondInputs,
+                configurationCache, reused.isMatched());
+    }
+
+    private Map<String, Map<String, String>> runRecordingCacheKeys(String[] arguments, String[] cacheArguments) {
+        final List<String> computed = Lists.newArrayList(arguments);
+        Collections.addAll(computed, cacheArguments);
+        cacheKeyRecorder = new BuildCacheKeyRecorder();
+        try {
+            run(computed.toArray(new String[0]));
+            return cacheKeyRecorder.getInputsByTask();
+        } finally {
+            cacheKeyRecorder = null;
         }
-        output = result.getOutput();
     }
 
     @Override
     public String getOutput() {
-        return output;
+        if (output == null) {
+            return null;
+        }
+        try {
+            return output.getText();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public String getOutputTail() {
+        return output == null ? null : output.getTail();
+    }
+
+    @Nullable
+    @Override
+    public List<BuildTask> getBuildTasks() {
+        return tasks;
+    }
+
+    @Nullable
+    @Override
+    public BuildProfile getProfile() {
+        return profile;
     }
 
     @Override
     public void fail() {
-        Assert.assertNotNull(result);
+        Assert.assertNotNull(tasks);
         Assert.assertNotNull(throwable);
     }
 
     @Override
     public void success() {
-        Assert.assertNotNull(result);
+        Assert.assertNotNull(tasks);
         Assert.assertNull(throwable);
     }
 
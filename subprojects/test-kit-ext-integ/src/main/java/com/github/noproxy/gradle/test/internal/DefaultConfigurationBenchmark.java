@@ -0,0 +1,99 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.noproxy.gradle.test.internal;
+
+import com.github.noproxy.gradle.test.api.BenchmarkResult;
+import com.github.noproxy.gradle.test.api.BuildProfile;
+import com.github.noproxy.gradle.test.api.ConfigurationBenchmark;
+import com.github.noproxy.gradle.test.api.ExecutionMode;
+import org.junit.Assert;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+public class DefaultConfigurationBenchmark implements ConfigurationBenchmark {
+    private static final String WARM_UPS_PROPERTY = "noproxy.benchmark.warmUps";
+    private static final String ITERATIONS_PROPERTY = "noproxy.benchmark.iterations";
+    private static final String REPORT_DIR_PROPERTY = "noproxy.benchmark.reportDir";
+    private final DefaultBuildRunner runner;
+    private final String name;
+    private final List<String> arguments = new ArrayList<>();
+    private int warmUpIterations = Integer.getInteger(WARM_UPS_PROPERTY, 5);
+    private int measuredIterations = Integer.getInteger(ITERATIONS_PROPERTY, 10);
+
+    public DefaultConfigurationBenchmark(DefaultBuildRunner runner, String name) {
+        this.runner = runner;
+        this.name = name;
+    }
+
+    @Override
+    public void setWarmUpIterations(int iterations) {
+        this.warmUpIterations = iterations;
+    }
+
+    @Override
+    public void setMeasuredIterations(int iterations) {
+        Assert.assertTrue("at least one measured iteration is required", iterations > 0);
+        this.measuredIterations = iterations;
+    }
+
+    @Override
+    public void arguments(String... additionArguments) {
+        Collections.addAll(arguments, additionArguments);
+    }
+
+    @Override
+    public BenchmarkResult run() {
+        final String[] iterationArguments = arguments.toArray(new String[0]);
+        final List<Long> millis = new ArrayList<>(measuredIterations);
+        final List<Long> allocatedBytes = new ArrayList<>(measuredIterations);
+
+        final ExecutionMode previousMode = runner.getExecutionMode();
+        final boolean previousProfiling = runner.isProfiling();
+        final boolean previousRecycling = runner.isDaemonRecycling();
+        runner.setExecutionMode(ExecutionMode.WARM_DAEMON);
+        runner.profile();
+        // a recycled daemon would be measured cold
+        runner.setDaemonRecycling(false);
+        try {
+            for (int i = 0; i < warmUpIterations; i++) {
+                runner.configure(iterationArguments);
+                runner.success();
+            }
+            for (int i = 0; i < measuredIterations; i++) {
+                runner.configure(iterationArguments);
+                runner.success();
+                final BuildProfile profile = runner.getProfile();
+                Assert.assertNotNull("no profile was recorded for iteration " + i, profile);
+                millis.add(profile.getConfigurationMillis());
+                allocatedBytes.add(profile.getConfigurationAllocatedBytes());
+            }
+        } finally {
+            runner.setExecutionMode(previousMode);
+            runner.setProfiling(previousProfiling);
+            runner.setDaemonRecycling(previousRecycling);
+        }
+
+        final File reportDir = new File(System.getProperty(REPORT_DIR_PROPERTY, "build/reports/benchmarks"));
+        final DefaultBenchmarkResult result = new DefaultBenchmarkResult(name, millis, allocatedBytes,
+                new File(reportDir, name + ".json"));
+        result.writeReport(warmUpIterations);
+        return result;
+    }
+}
@@ -0,0 +1,309 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.noproxy.gradle.test.internal;
+
+import com.github.noproxy.gradle.test.api.DependencyGraph;
+import com.github.noproxy.gradle.test.api.FileIntegrator;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.IntStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+class DefaultDependencyGraph implements DependencyGraph {
+    private static final String CLASSIFIER = "jdk8";
+    private static final String MANIFEST = "<manifest package=\"%s\"/>\n";
+    private int count;
+    private int versions = 1;
+    private long seed;
+    private String group = "generated";
+    private int groups = 1;
+    private String namePattern = "lib%05d";
+    private int maxDependencies = 3;
+    private double conflictRate = 0.2;
+    private int boms;
+    private double classifierRate;
+    private String packaging = "jar";
+
+    private static byte[] zip(Map<String, byte[]> entries) {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ZipOutputStream zip = new ZipOutputStream(bytes)) {
+            for (Map.Entry<String, byte[]> entry : entries.entrySet()) {
+                final ZipEntry zipEntry = new ZipEntry(entry.getKey());
+                zipEntry.setTime(ZipAssembler.REPRODUCIBLE_TIME);
+                zip.putNextEntry(zipEntry);
+                zip.write(entry.getValue());
+                zip.closeEntry();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void write(File file, byte[] content, boolean checksums) {
+        try {
+            Files.write(file.toPath(), content);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        if (checksums) {
+            MavenChecksums.write(file, MavenChecksums.digest(content));
+        }
+    }
+
+    private static void write(File file, String text, boolean checksums) {
+        write(file, text.getBytes(StandardCharsets.UTF_8), checksums);
+    }
+
+    private static String version(int index) {
+        return "1." + index + ".0";
+    }
+
+    @Override
+    public void setCount(int count) {
+        this.count = count;
+    }
+
+    @Override
+    public void setVersions(int versions) {
+        this.versions = versions;
+    }
+
+    @Override
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    @Override
+    public void setGroup(String group) {
+        this.group = group;
+    }
+
+    @Override
+    public void setGroups(int groups) {
+        this.groups = groups;
+    }
+
+    @Override
+    public void setNamePattern(String namePattern) {
+        this.namePattern = namePattern;
+    }
+
+    @Override
+    public void setMaxDependencies(int maxDependencies) {
+        this.maxDependencies = maxDependencies;
+    }
+
+    @Override
+    public void setConflictRate(double conflictRate) {
+        this.conflictRate = conflictRate;
+    }
+
+    @Override
+    public void setBoms(int boms) {
+        this.boms = boms;
+    }
+
+    @Override
+    public void setClassifierRate(double classifierRate) {
+        this.classifierRate = classifierRate;
+    }
+
+    @Override
+    public void setPackaging(String packaging) {
+        this.packaging = packaging;
+    }
+
+    private String groupOf(int index) {
+        return group + ".g" + index % Math.max(1, groups);
+    }
+
+    private String nameOf(int index) {
+        return String.format(namePattern, index);
+    }
+
+    /**
+     * Plan the whole graph up front, so the result doesn't depend on the order modules are written.
+     */
+    private List<Plan> plan(Random random) {
+        final boolean[] classified = new boolean[count];
+        for (int i = 0; i < count; i++) {
+            classified[i] = random.nextDouble() < classifierRate;
+        }
+
+        final List<Plan> plans = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            final Plan plan = new Plan(classified[i]);
+            final int candidates = count - i - 1;
+            final int wanted = candidates == 0 ? 0 : random.nextInt(Math.min(maxDependencies, candidates) + 1);
+            final Map<Integer, Dependency> targets = new LinkedHashMap<>();
+            while (targets.size() < wanted) {
+                final int target = i + 1 + random.nextInt(candidates);
+                final int version = versions > 1 && random.nextDouble() < conflictRate
+                        ? random.nextInt(versions - 1) : versions - 1;
+                final boolean classifier = classified[target] && random.nextBoolean();
+                targets.putIfAbsent(target, new Dependency(target, version, classifier));
+            }
+            plan.dependencies.addAll(targets.values());
+            plans.add(plan);
+        }
+        return plans;
+    }
+
+    /**
+     * @return the managed dependencies of every BOM
+     */
+    private List<List<String>> planBoms(Random random) {
+        final List<List<String>> managed = new ArrayList<>(boms);
+        for (int b = 0; b < boms; b++) {
+            managed.add(new ArrayList<>());
+        }
+        for (int i = 0; boms > 0 && i < count; i++) {
+            managed.get(i % boms).add(dependencyXml(i, random.nextInt(Math.max(1, versions)), false));
+        }
+        return managed;
+    }
+
+    private String dependencyXml(int target, int version, boolean classifier) {
+        return "<dependency>\n"
+                + "<groupId>" + groupOf(target) + "</groupId>\n"
+                + "<artifactId>" + nameOf(target) + "</artifactId>\n"
+                + "<version>" + version(version) + "</version>\n"
+                + (classifier ? "<classifier>" + CLASSIFIER + "</classifier>\n" : "")
+                + ("jar".equals(packaging) ? "" : "<type>" + packaging + "</type>\n")
+                + "</dependency>\n";
+    }
+
+    private byte[] artifact(int index, byte[] emptyJar) {
+        if (!"aar".equals(packaging)) {
+            return emptyJar;
+        }
+        final Map<String, byte[]> entries = new LinkedHashMap<>();
+        entries.put("AndroidManifest.xml", String.format(MANIFEST,
+                "generated." + nameOf(index).replaceAll("[^A-Za-z0-9_]", "_")).getBytes(StandardCharsets.UTF_8));
+        entries.put("classes.jar", emptyJar);
+        entries.put("R.txt", new byte[0]);
+        return zip(entries);
+    }
+
+    /**
+     * @return every setting of the graph, the modules it generates only depend on them
+     */
+    String getKey() {
+        return String.join(":", String.valueOf(count), String.valueOf(versions), String.valueOf(seed), group,
+                String.valueOf(groups), namePattern, String.valueOf(maxDependencies), String.valueOf(conflictRate),
+                String.valueOf(boms), String.valueOf(classifierRate), packaging);
+    }
+
+    /**
+     * Write the whole repository in parallel, every file is written once and digested from memory.
+     */
+    void generate(File repositoryRoot, boolean checksums) {
+        final Random random = new Random(seed);
+        final List<Plan> plans = plan(random);
+        final List<List<String>> managedByBom = planBoms(random);
+        final byte[] emptyJar = zip(Collections.singletonMap("META-INF/MANIFEST.MF",
+                "Manifest-Version: 1.0\r\n\r\n".getBytes(StandardCharsets.UTF_8)));
+        final List<String> allVersions = new ArrayList<>(versions);
+        for (int v = 0; v < versions; v++) {
+            allVersions.add(version(v));
+        }
+
+        IntStream.range(0, count).parallel().forEach(i -> {
+            final Plan plan = plans.get(i);
+            final String groupId = groupOf(i);
+            final String artifactId = nameOf(i);
+            final File moduleDir = new File(repositoryRoot, FileIntegrator.join(groupId.replace('.', '/'), artifactId));
+            final StringBuilder dependencies = new StringBuilder();
+            if (!plan.dependencies.isEmpty()) {
+                dependencies.append("<dependencies>\n");
+                for (Dependency dependency : plan.dependencies) {
+                    dependencies.append(dependencyXml(dependency.target, dependency.version, dependency.classifier));
+                }
+                dependencies.append("</dependencies>\n");
+            }
+            final byte[] artifact = artifact(i, emptyJar);
+
+            for (String version : allVersions) {
+                final File versionDir = new File(moduleDir, version);
+                if (!versionDir.mkdirs() && !versionDir.isDirectory()) {
+                    throw new UncheckedIOException(new IOException("Could not create " + versionDir));
+                }
+                write(new File(versionDir, DefaultMavenIntegrator.artifactName(artifactId, version, "pom")),
+                        DefaultMavenIntegrator.pom(groupId, artifactId, version, packaging, dependencies.toString()), checksums);
+                write(new File(versionDir, DefaultMavenIntegrator.artifactName(artifactId, version, packaging)),
+                        artifact, checksums);
+                if (plan.classified) {
+                    write(new File(versionDir, DefaultMavenIntegrator.artifactName(artifactId, version, CLASSIFIER, packaging)),
+                            artifact, checksums);
+                }
+            }
+            write(new File(moduleDir, "maven-metadata.xml"), DefaultMavenIntegrator.mavenMetaData(groupId, artifactId,
+                    allVersions, allVersions.get(allVersions.size() - 1)), checksums);
+        });
+
+        IntStream.range(0, boms).parallel().forEach(b -> {
+            final String artifactId = String.format("bom%03d", b);
+            final String version = version(0);
+            final File moduleDir = new File(repositoryRoot, FileIntegrator.join(group.replace('.', '/'), artifactId));
+            final File versionDir = new File(moduleDir, version);
+            if (!versionDir.mkdirs() && !versionDir.isDirectory()) {
+                throw new UncheckedIOException(new IOException("Could not create " + versionDir));
+            }
+            final String managed = "<dependencyManagement>\n<dependencies>\n"
+                    + String.join("", managedByBom.get(b))
+                    + "</dependencies>\n</dependencyManagement>\n";
+            write(new File(versionDir, DefaultMavenIntegrator.artifactName(artifactId, version, "pom")),
+                    DefaultMavenIntegrator.pom(group, artifactId, version, "pom", managed), checksums);
+            write(new File(moduleDir, "maven-metadata.xml"), DefaultMavenIntegrator.mavenMetaData(group, artifactId,
+                    Collections.singletonList(version), version), checksums);
+        });
+    }
+
+    private static class Plan {
+        final boolean classified;
+        final List<Dependency> dependencies = new ArrayList<>();
+
+        Plan(boolean classified) {
+            this.classified = classified;
+        }
+    }
+
+    private static class Dependency {
+        final int target;
+        final int version;
+        final boolean classifier;
+
+        Dependency(int target, int version, boolean classifier) {
+            this.target = target;
+            this.version = version;
+            this.classifier = classifier;
+        }
+    }
+}
@@ -18,7 +18,6 @@ package com.github.noproxy.gradle.test.internal;
 
 import com.github.noproxy.gradle.test.api.FileIntegrator;
 import com.github.noproxy.gradle.test.api.ZipIntegrator;
-import com.google.common.collect.Sets;
 import groovy.lang.Closure;
 import org.apache.commons.io.FileUtils;
 import org.gradle.api.Action;
@@ -29,12 +28,18 @@ import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
 import java.util.Objects;
-import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @NonNullApi
 public class DefaultFileIntegrator implements FileIntegrator, FileIntegratorInternal {
+    // null when the subclass creates its root on demand
+    @Nullable
     private final File root;
-    private final Set<Closeable> children = Sets.newHashSet();
+    private final CloseScheduler children = new CloseScheduler();
+    private final AtomicBoolean closed = new AtomicBoolean();
+    private final AtomicInteger tempFileCounter = new AtomicInteger();
+    private final PendingCompilations pendingCompilations = new PendingCompilations();
     @Nullable
     private final FileIntegratorInternal parent;
 
@@ -48,9 +53,17 @@ public class DefaultFileIntegrator implements FileIntegrator, FileIntegratorInte
         this.parent = (FileIntegratorInternal) parent;
     }
 
+    /**
+     * For subclasses overriding {@link #getRoot()}.
+     */
+    DefaultFileIntegrator(FileIntegrator parent) {
+        this.root = null;
+        this.parent = (FileIntegratorInternal) parent;
+    }
+
     @Override
     public void reset() {
-        for (File child : Objects.requireNonNull(root.listFiles())) {
+        for (File child : Objects.requireNonNull(getRoot().listFiles())) {
             FileUtils.deleteQuietly(child);
         }
     }
@@ -158,7 +171,7 @@ public class DefaultFileIntegrator implements FileIntegrator, FileIntegratorInte
 
     @Override
     public File getRoot() {
-        return root;
+        return Objects.requireNonNull(root);
     }
 
     @Override
@@ -199,27 +212,31 @@ public class DefaultFileIntegrator implements FileIntegrator, FileIntegratorInte
      * do it by {@link #addCloseable(Closeable)} if they should be closed before parent and this;
      * or override {@link #close()} to close them after children(you can custom the order against parent by
      * changing the call super location.)
+     * <p>
+     * Children are closed concurrently unless one depends on another, see {@link #addCloseable(Closeable, Closeable...)}.
      *
-     * @throws IOException when some error happens
+     * @throws IOException when some error happens, all children are closed anyway
      */
     // TODO use Junit Rule impl auto close
     @Override
     public void close() throws IOException {
-        if (close) {
+        if (!closed.compareAndSet(false, true)) {
             return;
         }
 
-        close = true;
-        children.forEach(closeable -> Actions.close().execute(closeable));
+        children.closeAll();
     }
 
-    private boolean close = false;
-
     @Override
     public void addCloseable(Closeable closeable) {
         children.add(closeable);
     }
 
+    @Override
+    public void addCloseable(Closeable closeable, Closeable... dependencies) {
+        children.add(closeable, dependencies);
+    }
+
     @Override
     public File newTempDir(String type, String name) {
         return newTempFile(type, name).getRoot();
@@ -231,7 +248,9 @@ public class DefaultFileIntegrator implements FileIntegrator, FileIntegratorInte
             return parent.newTempFile(type, name);
         }
 
-        final String path = FileIntegrator.join(HIDING_DIRECTORY, type, name, "" + System.currentTimeMillis());
+        // millis alone collide when two temp dirs of the same name are created in the same millisecond
+        final String path = FileIntegrator.join(HIDING_DIRECTORY, type, name,
+                System.currentTimeMillis() + "-" + tempFileCounter.incrementAndGet());
         return child(newDir(path));
     }
 
@@ -245,6 +264,14 @@ public class DefaultFileIntegrator implements FileIntegrator, FileIntegratorInte
         return child(newDir(path));
     }
 
+    @Override
+    public PendingCompilations getPendingCompilations() {
+        if (parent != null) {
+            return parent.getPendingCompilations();
+        }
+        return pendingCompilations;
+    }
+
     @Override
     public FileIntegrator mavenDefaults() {
         return newFixDir(MAVEN_DEFAULTS_TYPE, MAVEN_DEFAULTS_NAME);
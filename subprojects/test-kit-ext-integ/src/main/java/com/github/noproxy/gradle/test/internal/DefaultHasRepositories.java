@@ -78,4 +78,31 @@ public class DefaultHasRepositories extends TextContext implements HasRepositori
                 "}", HidingDirectoryProvider.MAVEN_DEFAULS_PATH);
         append(text);
     }
+
+    @Override
+    public void mavenDefaultsHttp() {
+        String text = String.format("\n" +
+                "maven { \n" +
+                "    def urlFile = rootProject.file('%s')\n" +
+                "    if (!urlFile.exists()) {\n" +
+                "        throw new GradleException('mavenDefaultsHttp() needs the maven http server of the specification to be started')\n" +
+                "    }\n" +
+                "    url urlFile.text.trim()\n" +
+                "    try {\n" +
+                "        allowInsecureProtocol = true\n" +
+                "    } catch (MissingPropertyException ignored) {\n" +
+                "        // before Gradle 6.0\n" +
+                "    }\n" +
+                "}", DefaultMavenHttpServer.URL_FILE);
+        append(text);
+    }
+
+    @Override
+    public void sharedMaven() {
+        String text = String.format("\n" +
+                "maven { \n" +
+                "    url '%s'\n" +
+                "}", SharedMavenIntegrator.getRepositoryDir().toURI());
+        append(text);
+    }
 }
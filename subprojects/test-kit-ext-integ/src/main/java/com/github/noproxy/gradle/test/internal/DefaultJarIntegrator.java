@@ -16,107 +16,101 @@
 
 package com.github.noproxy.gradle.test.internal;
 
-import com.github.noproxy.gradle.test.api.FileIntegrator;
 import com.github.noproxy.gradle.test.api.JarIntegrator;
-import org.apache.commons.io.FilenameUtils;
-import org.codehaus.groovy.runtime.ResourceGroovyMethods;
+import com.github.noproxy.gradle.test.api.StubClassSpec;
+import groovy.lang.Closure;
+import org.gradle.api.Action;
 import org.jetbrains.annotations.NotNull;
 
-import javax.tools.*;
 import java.io.File;
 import java.io.IOException;
-import java.nio.charset.Charset;
-import java.nio.file.*;
-import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Locale;
-
-import static com.github.noproxy.gradle.test.internal.Actions.execute;
-import static com.github.noproxy.gradle.test.internal.Actions.setText;
+import java.util.Map;
 
 class DefaultJarIntegrator extends DefaultZipIntegrator implements JarIntegrator {
     private static final boolean DEBUG = false;
-    private final FileIntegrator sourceDir;
-    private final List<File> toCompiledSources = new ArrayList<>();
+    private final Map<String, String> toCompiledSources = new LinkedHashMap<>();
+    private final Map<String, byte[]> stubClasses = new LinkedHashMap<>();
+    private final List<DefaultJarIntegrator> classpathJars = new ArrayList<>();
 
     DefaultJarIntegrator(@NotNull File destZipFile, @NotNull FileIntegratorInternal parent) {
         super(destZipFile, parent);
-        sourceDir = newTempFile("java_sources", FilenameUtils.getBaseName(destZipFile.getName()));
     }
 
     @Override
     public void newClass(String className, String javaSource) {
-        final int split = className.lastIndexOf('.');
-        final String simpleName;
-        final String packageName;
-        if (split > 0) {
-            simpleName = className.substring(split + 1);
-            packageName = className.substring(0, split);
-        } else {
-            simpleName = className;
-            packageName = "";
-        }
-        newClass(packageName, simpleName, javaSource);
+        toCompiledSources.put(className, javaSource);
+        getPendingCompilations().register(this);
     }
 
     @Override
     public void newClass(String packageName, String simpleClassName, String javaSource) {
-        final String path = packageName.replace('.', File.separatorChar);
+        newClass(packageName.isEmpty() ? simpleClassName : packageName + "." + simpleClassName, javaSource);
+    }
+
+    @Override
+    public void stubClass(String className) {
+        stubClass(className, Actions.nothing());
+    }
+
+    @Override
+    public void stubClass(String className, Action<? super StubClassSpec> action) {
+        final DefaultStubClassSpec spec = new DefaultStubClassSpec(className);
+        action.execute(spec);
+        final byte[] bytes = spec.generate();
+        stubClasses.put(className, bytes);
+        entry(DefaultStubClassSpec.internalName(className) + ".class", bytes);
+    }
+
+    @Override
+    public void stubClass(String className, Closure closure) {
+        stubClass(className, Actions.of(closure));
+    }
 
-        sourceDir.newFile(FileIntegrator.join(path, simpleClassName + ".java"), file -> {
-            toCompiledSources.add(file);
-            execute(file, setText(javaSource));
-        });
+    @Override
+    public void classpath(JarIntegrator jar) {
+        classpathJars.add((DefaultJarIntegrator) jar);
+        if (!toCompiledSources.isEmpty()) {
+            getPendingCompilations().register(this);
+        }
     }
 
     @Override
     public void close() throws IOException {
+        // entries may have been streamed already, so the archive is always finished
         if (toCompiledSources.isEmpty()) {
             System.out.println("skip compile for no sources");
-            return;
+        } else {
+            // compiles the other pending jars of the tree too, see PendingCompilations
+            archiveClasses(getPendingCompilations().classesOf(this));
         }
 
-        compile(sourceDir.getRoot());
-        archiveClassFile();
-
         // at last
         super.close();
     }
 
-    private void compile(File sourceDir) throws IOException {
-        if (DEBUG) {
-            System.out.println("prepare compile, source dir: " + sourceDir);
-        }
-        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
-        DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
-        StandardJavaFileManager fileManager = compiler.getStandardFileManager(diagnostics, null, Charset.forName("UTF-8"));
-
-        Iterable<? extends JavaFileObject> compilationUnits = fileManager.getJavaFileObjectsFromFiles(toCompiledSources);
-        JavaCompiler.CompilationTask task = compiler.getTask(null, fileManager, diagnostics, getOptions(), null, compilationUnits);
-        if (DEBUG) {
-            System.out.println("prepare compile, source dir: " + sourceDir);
-            System.out.println("start compile");
-        }
-        boolean success = task.call();
-        if (DEBUG) {
-            System.out.println("compile end");
-        }
-        fileManager.close();
-
-        if (!success) {
-            final Path root = sourceDir.toPath();
-            for (Diagnostic<? extends JavaFileObject> diagnostic : diagnostics.getDiagnostics()) {
-                Path file = Paths.get(diagnostic.getSource().toUri());
+    Map<String, String> getSources() {
+        return toCompiledSources;
+    }
 
-                System.err.printf("%s:%d%n %s\n", root.relativize(file), diagnostic.getLineNumber(), diagnostic.getMessage(Locale.US));
-            }
-            throw new RuntimeException("failed to compile files in " + sourceDir);
+    /**
+     * @return the stub classes of this jar and of the jars on its classpath by binary name, they are on the classpath
+     * when the sources are compiled
+     */
+    Map<String, byte[]> getStubClasses() {
+        if (classpathJars.isEmpty()) {
+            return stubClasses;
         }
+        final Map<String, byte[]> classes = new LinkedHashMap<>();
+        classpathJars.forEach(jar -> classes.putAll(jar.stubClasses));
+        classes.putAll(stubClasses);
+        return classes;
     }
 
-    private List<String> getOptions() {
+    List<String> getOptions() {
         final String property = System.getProperty("java.class.path");
         final String classpath;
         if (property == null) {
@@ -142,23 +136,7 @@ class DefaultJarIntegrator extends DefaultZipIntegrator implements JarIntegrator
     }
 
 
-    private void archiveClassFile() throws IOException {
-        final Path root = sourceDir.getRoot().toPath();
-        Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
-            @Override
-            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
-                if (file.getFileName().toString().endsWith(".class")) {
-                    final Path relativize = root.relativize(file);
-                    newFile(relativize.toString(), fileInZip -> {
-                        try {
-                            ResourceGroovyMethods.setBytes(fileInZip, ResourceGroovyMethods.getBytes(file.toFile()));
-                        } catch (IOException e) {
-                            throw new RuntimeException(e);
-                        }
-                    });
-                }
-                return super.visitFile(file, attrs);
-            }
-        });
+    private void archiveClasses(Map<String, byte[]> classes) {
+        classes.forEach((className, bytes) -> entry(className.replace('.', '/') + ".class", bytes));
     }
 }
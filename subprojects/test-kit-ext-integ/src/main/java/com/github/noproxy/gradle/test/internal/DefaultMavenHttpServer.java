@@ -0,0 +1,267 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.noproxy.gradle.test.internal;
+
+import com.github.noproxy.gradle.test.api.MavenHttpServer;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.rules.TestRule;
+import org.junit.runner.Description;
+import org.junit.runners.model.Statement;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+
+import static com.github.noproxy.gradle.test.internal.Actions.execute;
+import static com.github.noproxy.gradle.test.internal.Actions.setText;
+
+/**
+ * A {@link MavenHttpServer} started on demand and stopped after the test, it writes its url to {@code defaults.url}
+ * next to the maven defaults directory for {@link DefaultHasRepositories#mavenDefaultsHttp()}.
+ */
+public class DefaultMavenHttpServer implements MavenHttpServer, TestRule {
+    static final String URL_FILE = HidingDirectoryProvider.HIDING_DIRECTORY + "/" + HidingDirectoryProvider.MAVEN_DEFAULTS_TYPE
+            + "/" + HidingDirectoryProvider.MAVEN_DEFAULTS_NAME + ".url";
+    private static final int CHUNK_SIZE = 8 * 1024;
+    private final File projectDir;
+    private final File repositoryDir;
+    private final List<String> requests = new CopyOnWriteArrayList<>();
+    private final List<Failure> failures = new CopyOnWriteArrayList<>();
+    private volatile long latencyMillis;
+    private volatile long bytesPerSecond;
+    private HttpServer server;
+    private ExecutorService executor;
+
+    public DefaultMavenHttpServer(File projectDir) {
+        this.projectDir = projectDir;
+        this.repositoryDir = new File(projectDir, HidingDirectoryProvider.MAVEN_DEFAULS_PATH);
+    }
+
+    private static void sleep(long millis) {
+        if (millis <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public Statement apply(Statement base, Description description) {
+        return new Statement() {
+            @Override
+            public void evaluate() throws Throwable {
+                try {
+                    base.evaluate();
+                } finally {
+                    stop();
+                }
+            }
+        };
+    }
+
+    @Override
+    public synchronized void start() {
+        if (server != null) {
+            return;
+        }
+        try {
+            server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        // builds download in parallel
+        executor = Executors.newCachedThreadPool(runnable -> {
+            final Thread thread = new Thread(runnable, "maven-http-server");
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.setExecutor(executor);
+        server.createContext("/", this::handle);
+        server.start();
+        execute(new File(projectDir, URL_FILE), setText(getUri().toString()));
+    }
+
+    @Override
+    public synchronized URI getUri() {
+        if (server == null) {
+            throw new IllegalStateException("the maven http server is not started");
+        }
+        return URI.create("http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort() + "/");
+    }
+
+    @Override
+    public void setLatencyMillis(long latencyMillis) {
+        this.latencyMillis = latencyMillis;
+    }
+
+    @Override
+    public void setBandwidth(long bytesPerSecond) {
+        this.bytesPerSecond = bytesPerSecond;
+    }
+
+    @Override
+    public void fail(String pathRegex, int status) {
+        failures.add(new Failure(Pattern.compile(pathRegex), status, -1));
+    }
+
+    @Override
+    public void failNext(String pathRegex, int status, int times) {
+        failures.add(new Failure(Pattern.compile(pathRegex), status, times));
+    }
+
+    @Override
+    public void clearFailures() {
+        failures.clear();
+    }
+
+    @Override
+    public int getRequestCount() {
+        return requests.size();
+    }
+
+    @Override
+    public int getRequestCount(String method) {
+        return (int) requests.stream().filter(request -> request.startsWith(method + " ")).count();
+    }
+
+    @Override
+    public List<String> getRequests() {
+        return new ArrayList<>(requests);
+    }
+
+    @Override
+    public void resetRequests() {
+        requests.clear();
+    }
+
+    @Override
+    public synchronized void stop() {
+        if (server == null) {
+            return;
+        }
+        server.stop(0);
+        executor.shutdownNow();
+        server = null;
+        executor = null;
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            final String method = exchange.getRequestMethod();
+            final String path = exchange.getRequestURI().getPath();
+            requests.add(method + " " + path);
+            sleep(latencyMillis);
+
+            for (Failure failure : failures) {
+                if (failure.matches(path)) {
+                    exchange.sendResponseHeaders(failure.status, -1);
+                    return;
+                }
+            }
+
+            final File file = new File(repositoryDir, path.substring(1));
+            if (!file.toPath().normalize().startsWith(repositoryDir.toPath().normalize()) || !file.isFile()) {
+                exchange.sendResponseHeaders(404, -1);
+                return;
+            }
+            if ("HEAD".equals(method)) {
+                exchange.getResponseHeaders().set("Content-Length", String.valueOf(file.length()));
+                exchange.sendResponseHeaders(200, -1);
+                return;
+            }
+            if (!"GET".equals(method)) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            exchange.sendResponseHeaders(200, file.length());
+            send(file, exchange.getResponseBody());
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void send(File file, OutputStream output) throws IOException {
+        final byte[] buffer = new byte[CHUNK_SIZE];
+        final long start = System.nanoTime();
+        long sent = 0;
+        try (InputStream input = Files.newInputStream(file.toPath())) {
+            int read;
+            while ((read = input.read(buffer)) != -1) {
+                output.write(buffer, 0, read);
+                sent += read;
+                final long limit = bytesPerSecond;
+                if (limit > 0) {
+                    // sleep until the bytes sent so far are within the bandwidth
+                    final long due = TimeUnit.SECONDS.toMillis(sent) / limit;
+                    sleep(due - TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+                }
+            }
+        }
+        output.flush();
+    }
+
+    private static class Failure {
+        final Pattern path;
+        final int status;
+        final boolean forever;
+        final AtomicInteger remaining;
+
+        Failure(Pattern path, int status, int times) {
+            this.path = path;
+            this.status = status;
+            this.forever = times < 0;
+            this.remaining = new AtomicInteger(times);
+        }
+
+        boolean matches(String requestPath) {
+            if (!path.matcher(requestPath).find()) {
+                return false;
+            }
+            if (forever) {
+                return true;
+            }
+            while (true) {
+                final int left = remaining.get();
+                if (left <= 0) {
+                    return false;
+                }
+                if (remaining.compareAndSet(left, left - 1)) {
+                    return true;
+                }
+            }
+        }
+    }
+}
@@ -27,15 +27,31 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 class DefaultMavenIntegrator implements MavenIntegrator {
 
+    private static final String GRADLE_METADATA_MARKER = "<!-- do_not_remove: published-with-gradle-metadata -->";
     private final FileIntegrator mavenRoot;
+    private final List<Publication> publications = new ArrayList<>();
+    private final List<DefaultDependencyGraph> graphs = new ArrayList<>();
     private ListMultimap<Module, String> artifactVersions = ArrayListMultimap.create();
+    private boolean checksums = Boolean.parseBoolean(System.getProperty("noproxy.maven.checksums", "true"));
+    private boolean gradleMetadata = Boolean.getBoolean("noproxy.maven.gradleMetadata");
 
     DefaultMavenIntegrator(FileIntegrator mavenRoot) {
         this.mavenRoot = mavenRoot;
@@ -57,7 +73,20 @@ class DefaultMavenIntegrator implements MavenIntegrator {
         return artifact + "-" + version + "." + ext;
     }
 
-    private static String mavenMetaData(String group, String artifact, Iterable<String> versions, String latestVersion) {
+    static String pom(String group, String artifact, String version, String packaging, String content) {
+        return String.format("<project xmlns=\"http://maven.apache.org/POM/4.0.0\" xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\" xsi:schemaLocation=\"http://maven.apache.org/POM/4.0.0 http://maven.apache.org/xsd/maven-4.0.0.xsd\">\n" +
+                "<modelVersion>4.0.0</modelVersion>\n" +
+                "<groupId>%s</groupId>\n" +
+                "<artifactId>%s</artifactId>\n" +
+                "<version>%s</version>\n" +
+                "<packaging>%s</packaging>\n" +
+                "<name>%s</name>\n" +
+                "<description>Generated Module By DefaultMavenIntegrator</description>\n" +
+                "%s" +
+                "</project>", group, artifact, version, packaging, artifact, content);
+    }
+
+    static String mavenMetaData(String group, String artifact, Iterable<String> versions, String latestVersion) {
         final String start = String.format("<metadata>\n<groupId>%s</groupId>\n<artifactId>%s</artifactId>\n<versioning>\n<latest>%s</latest>\n<release>%s</release>\n<versions>",
                 group, artifact, latestVersion, latestVersion);
         StringBuilder s = new StringBuilder(start);
@@ -73,6 +102,68 @@ class DefaultMavenIntegrator implements MavenIntegrator {
         return s.toString();
     }
 
+    private static String moduleMetadata(Publication publication, @Nullable File artifactFile,
+                                         @Nullable Map<String, String> digests) {
+        final StringBuilder files = new StringBuilder();
+        if (artifactFile != null && digests != null) {
+            files.append("\n        {\n")
+                    .append("          \"name\": ").append(Json.string(artifactFile.getName())).append(",\n")
+                    .append("          \"url\": ").append(Json.string(artifactFile.getName())).append(",\n")
+                    .append("          \"size\": ").append(artifactFile.length()).append(",\n")
+                    .append("          \"sha512\": \"").append(digests.get(MavenChecksums.SHA512)).append("\",\n")
+                    .append("          \"sha256\": \"").append(digests.get(MavenChecksums.SHA256)).append("\",\n")
+                    .append("          \"sha1\": \"").append(digests.get(MavenChecksums.SHA1)).append("\",\n")
+                    .append("          \"md5\": \"").append(digests.get(MavenChecksums.MD5)).append("\"\n")
+                    .append("        }\n      ");
+        }
+
+        final List<String> variants = new ArrayList<>();
+        for (String usage : new String[]{"api", "runtime"}) {
+            variants.add("    {\n"
+                    + "      \"name\": \"" + usage + "Elements\",\n"
+                    + "      \"attributes\": {\n"
+                    + "        \"org.gradle.category\": \"library\",\n"
+                    + "        \"org.gradle.dependency.bundling\": \"external\",\n"
+                    + "        \"org.gradle.libraryelements\": " + Json.string(publication.packaging) + ",\n"
+                    + "        \"org.gradle.usage\": \"java-" + usage + "\"\n"
+                    + "      },\n"
+                    + "      \"files\": [" + files + "]\n"
+                    + "    }");
+        }
+
+        return "{\n"
+                + "  \"formatVersion\": \"1.1\",\n"
+                + "  \"component\": {\n"
+                + "    \"group\": " + Json.string(publication.group) + ",\n"
+                + "    \"module\": " + Json.string(publication.artifact) + ",\n"
+                + "    \"version\": " + Json.string(publication.version) + ",\n"
+                + "    \"attributes\": {\n"
+                + "      \"org.gradle.status\": \"release\"\n"
+                + "    }\n"
+                + "  },\n"
+                + "  \"variants\": [\n"
+                + String.join(",\n", variants) + "\n"
+                + "  ]\n"
+                + "}\n";
+    }
+
+    private static void markPublishedWithGradleMetadata(File pom) {
+        if (!pom.isFile()) {
+            return;
+        }
+        try {
+            final String text = new String(Files.readAllBytes(pom.toPath()), StandardCharsets.UTF_8);
+            if (text.contains(GRADLE_METADATA_MARKER)) {
+                return;
+            }
+            final String anchor = text.contains("<modelVersion>") ? "<modelVersion>" : "</project>";
+            Files.write(pom.toPath(), text.replaceFirst(anchor, GRADLE_METADATA_MARKER + "\n" + anchor)
+                    .getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
     private static String findLatestVersion(List<String> versions) {
         return versions.stream()
                 .map(ComparableVersion::new)
@@ -84,6 +175,16 @@ class DefaultMavenIntegrator implements MavenIntegrator {
         return mavenRoot;
     }
 
+    @Override
+    public void setChecksums(boolean checksums) {
+        this.checksums = checksums;
+    }
+
+    @Override
+    public void setGradleMetadata(boolean gradleMetadata) {
+        this.gradleMetadata = gradleMetadata;
+    }
+
     @Override
     public void javaModule(String group, String artifact, String version, Action<JarIntegrator> action) {
         this.module(group, artifact, version, "jar", dir -> {
@@ -114,16 +215,9 @@ class DefaultMavenIntegrator implements MavenIntegrator {
         // create pom
         final File versionDir = mavenRoot.file(FileIntegrator.join(toPath(group), artifact, version));
         ModuleIntegrator moduleIntegrator = Integrators.module(versionDir, mavenRoot, group, artifact, version);
+        publications.add(new Publication(group, artifact, version, packaging, versionDir));
 
-        final String pom = String.format("<project xmlns=\"http://maven.apache.org/POM/4.0.0\" xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\" xsi:schemaLocation=\"http://maven.apache.org/POM/4.0.0 http://maven.apache.org/xsd/maven-4.0.0.xsd\">\n" +
-                "<modelVersion>4.0.0</modelVersion>\n" +
-                "<groupId>%s</groupId>\n" +
-                "<artifactId>%s</artifactId>\n" +
-                "<version>%s</version>\n" +
-                "<packaging>aar</packaging>\n" +
-                "<name>%s</name>\n" +
-                "<description>Generated Module By DefaultMavenIntegrator</description>\n" +
-                "</project>", group, artifact, version, artifact);
+        final String pom = pom(group, artifact, version, packaging, "");
         moduleIntegrator.newFile(artifactName(artifact, version, "pom"), Actions.setText(pom));
 
         action.execute(moduleIntegrator);
@@ -153,12 +247,29 @@ class DefaultMavenIntegrator implements MavenIntegrator {
         module(group, artifact, version, packaging, Actions.of(closure));
     }
 
+    @Override
+    public void generateModules(Closure graphConfigure) {
+        generateModules(Actions.of(graphConfigure));
+    }
+
+    @Override
+    public void generateModules(Action<? super DependencyGraph> graphConfigure) {
+        final DefaultDependencyGraph graph = new DefaultDependencyGraph();
+        graphConfigure.execute(graph);
+        graphs.add(graph);
+    }
+
     private void addArtifactVersion(String group, String artifact, String version) {
         artifactVersions.put(Module.of(group, artifact), version);
     }
 
     @Override
     public void close() {
+        // generated modules come with their metadata and checksums
+        for (DefaultDependencyGraph graph : graphs) {
+            graph.generate(mavenRoot.getRoot(), checksums);
+        }
+
         // create all maven metadata
         for (Module module : artifactVersions.keySet()) {
             //Note: artifactId don't need to replace dot with slash
@@ -166,6 +277,75 @@ class DefaultMavenIntegrator implements MavenIntegrator {
             final List<String> versions = artifactVersions.get(module);
             mavenRoot.newFile(path, Actions.setText(mavenMetaData(module.group, module.artifact, versions, findLatestVersion(versions))));
         }
+
+        if (gradleMetadata) {
+            publications.forEach(publication -> markPublishedWithGradleMetadata(publication.file(null, "pom")));
+        }
+
+        // every file is read once for all its digests, files in parallel
+        final Map<File, Map<String, String>> digests = checksums
+                ? MavenChecksums.write(repositoryFiles()) : Collections.emptyMap();
+
+        if (gradleMetadata) {
+            final List<File> metadataFiles = new ArrayList<>();
+            for (Publication publication : publications) {
+                final File metadataFile = publication.file(null, "module");
+                if (metadataFile.exists()) {
+                    continue;
+                }
+                final File artifactFile = publication.file(null, publication.packaging);
+                if (artifactFile.isFile()) {
+                    final Map<String, String> digest = digests.containsKey(artifactFile)
+                            ? digests.get(artifactFile) : MavenChecksums.digest(artifactFile);
+                    Actions.execute(metadataFile, Actions.setText(moduleMetadata(publication, artifactFile, digest)));
+                } else {
+                    Actions.execute(metadataFile, Actions.setText(moduleMetadata(publication, null, null)));
+                }
+                metadataFiles.add(metadataFile);
+            }
+            if (checksums) {
+                MavenChecksums.write(metadataFiles);
+            }
+        }
+    }
+
+    private List<File> repositoryFiles() {
+        final TreeSet<File> files = new TreeSet<>();
+        for (Module module : artifactVersions.keySet()) {
+            final File moduleDir = mavenRoot.file(FileIntegrator.join(toPath(module.group), module.artifact));
+            if (!moduleDir.isDirectory()) {
+                continue;
+            }
+            try (Stream<Path> walk = Files.walk(moduleDir.toPath())) {
+                files.addAll(walk.filter(Files::isRegularFile)
+                        .map(Path::toFile)
+                        .filter(file -> !MavenChecksums.isChecksum(file))
+                        .collect(Collectors.toList()));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return new ArrayList<>(files);
+    }
+
+    private static class Publication {
+        final String group;
+        final String artifact;
+        final String version;
+        final String packaging;
+        final File versionDir;
+
+        Publication(String group, String artifact, String version, String packaging, File versionDir) {
+            this.group = group;
+            this.artifact = artifact;
+            this.version = version;
+            this.packaging = packaging;
+            this.versionDir = versionDir;
+        }
+
+        File file(@Nullable String classifier, String ext) {
+            return new File(versionDir, artifactName(artifact, version, classifier, ext));
+        }
     }
 
     private static class Module {
@@ -0,0 +1,189 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.noproxy.gradle.test.internal;
+
+import com.github.noproxy.gradle.test.api.ProjectGraph;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.IntStream;
+
+class DefaultProjectGraph implements ProjectGraph {
+    private static final String MANIFEST = "<manifest package=\"%s\"/>\n";
+    private int count;
+    private Shape shape = Shape.CHAIN;
+    private long seed;
+    private String namePattern = "module%04d";
+    private int branching = 2;
+    private int maxDependencies = 3;
+    private boolean androidLibrary;
+    private ModuleTemplate template;
+
+    private static String defaultBuildFile(boolean android, List<String> dependencies) {
+        final StringBuilder builder = new StringBuilder();
+        if (android) {
+            builder.append("apply plugin: 'com.android.library'\n\n")
+                    .append("repositories {\n    google()\n    jcenter()\n}\n\n")
+                    .append("android {\n    compileSdkVersion 28\n}\n");
+        } else {
+            builder.append("apply plugin: 'java-library'\n");
+        }
+        if (!dependencies.isEmpty()) {
+            builder.append("\ndependencies {\n");
+            for (String dependency : dependencies) {
+                builder.append("    implementation project('").append(dependency).append("')\n");
+            }
+            builder.append("}\n");
+        }
+        return builder.toString();
+    }
+
+    private static void write(Path file, String text) {
+        try {
+            Files.createDirectories(file.getParent());
+            Files.write(file, text.getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void setCount(int count) {
+        this.count = count;
+    }
+
+    @Override
+    public void setShape(Shape shape) {
+        this.shape = shape;
+    }
+
+    @Override
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    @Override
+    public void setNamePattern(String namePattern) {
+        this.namePattern = namePattern;
+    }
+
+    @Override
+    public void setBranching(int branching) {
+        this.branching = branching;
+    }
+
+    @Override
+    public void setMaxDependencies(int maxDependencies) {
+        this.maxDependencies = maxDependencies;
+    }
+
+    @Override
+    public void setAndroidLibrary(boolean androidLibrary) {
+        this.androidLibrary = androidLibrary;
+    }
+
+    @Override
+    public void template(ModuleTemplate moduleTemplate) {
+        this.template = moduleTemplate;
+    }
+
+    boolean isAndroidLibrary() {
+        return androidLibrary;
+    }
+
+    String name(int index) {
+        return String.format(namePattern, index);
+    }
+
+    /**
+     * @return the numbers of the modules every module depends on
+     */
+    List<List<Integer>> dependencies() {
+        final List<List<Integer>> dependencies = new ArrayList<>(count);
+        final Random random = new Random(seed);
+        for (int i = 0; i < count; i++) {
+            final Set<Integer> targets = new LinkedHashSet<>();
+            switch (shape) {
+                case CHAIN:
+                    if (i + 1 < count) {
+                        targets.add(i + 1);
+                    }
+                    break;
+                case TREE:
+                    for (int child = i * branching + 1; child <= i * branching + branching && child < count; child++) {
+                        targets.add(child);
+                    }
+                    break;
+                case RANDOM_DAG:
+                    final int candidates = count - i - 1;
+                    final int wanted = candidates == 0 ? 0 : random.nextInt(Math.min(maxDependencies, candidates) + 1);
+                    while (targets.size() < wanted) {
+                        targets.add(i + 1 + random.nextInt(candidates));
+                    }
+                    break;
+                default:
+                    throw new IllegalStateException("unknown shape " + shape);
+            }
+            dependencies.add(Collections.unmodifiableList(new ArrayList<>(targets)));
+        }
+        return dependencies;
+    }
+
+    /**
+     * Write the modules under the root dir in parallel.
+     *
+     * @return the include statements of the settings
+     */
+    String generate(File root) {
+        final List<List<Integer>> dependencies = dependencies();
+        final String[] names = new String[count];
+        for (int i = 0; i < count; i++) {
+            names[i] = name(i);
+        }
+
+        IntStream.range(0, count).parallel().forEach(i -> {
+            final List<String> paths = new ArrayList<>(dependencies.get(i).size());
+            for (int dependency : dependencies.get(i)) {
+                paths.add(":" + names[dependency]);
+            }
+            final Path dir = new File(root, names[i]).toPath();
+            write(dir.resolve("build.gradle"), template != null
+                    ? template.buildFile(names[i], paths)
+                    : defaultBuildFile(androidLibrary, paths));
+            if (androidLibrary) {
+                write(dir.resolve("src/main/AndroidManifest.xml"),
+                        String.format(MANIFEST, "generated." + names[i].replaceAll("[^A-Za-z0-9_]", "_")));
+            }
+        });
+
+        final StringBuilder settings = new StringBuilder("\n");
+        for (String name : names) {
+            settings.append("include ':").append(name).append("'\n");
+        }
+        return settings.toString();
+    }
+}
@@ -18,13 +18,17 @@ package com.github.noproxy.gradle.test.internal;
 
 import com.github.noproxy.gradle.test.api.AndroidIntegrator;
 import com.github.noproxy.gradle.test.api.FileIntegrator;
+import com.github.noproxy.gradle.test.api.ProjectGraph;
 import com.github.noproxy.gradle.test.api.ProjectIntegrator;
 import com.github.noproxy.gradle.test.api.SrcIntegrator;
+import com.github.noproxy.gradle.test.api.TemplateOptions;
 import groovy.lang.Closure;
 import org.gradle.api.Action;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 
 import static com.github.noproxy.gradle.test.internal.Actions.appendText;
@@ -38,6 +42,7 @@ class DefaultProjectIntegrator implements ProjectIntegrator {
     private final ScriptContextInternal buildFile = GroovyFactory.createScriptContext();
     private final ScriptContextInternal buildscript = GroovyFactory.createScriptContext();
     private final PluginsContextInternal plugins = GroovyFactory.createPluginsContext();
+    private final List<DefaultProjectGraph> graphs = new ArrayList<>();
 
     DefaultProjectIntegrator(FileIntegrator integrator) {
         this.integrator = (FileIntegratorInternal) integrator;
@@ -131,8 +136,30 @@ class DefaultProjectIntegrator implements ProjectIntegrator {
         androidConfigure.call();
     }
 
+    @Override
+    public void generateProjects(Closure graphConfigure) {
+        generateProjects(Actions.of(graphConfigure));
+    }
+
+    @Override
+    public void generateProjects(Action<? super ProjectGraph> graphConfigure) {
+        final DefaultProjectGraph graph = new DefaultProjectGraph();
+        graphConfigure.execute(graph);
+        graphs.add(graph);
+    }
+
     @Override
     public void close() throws IOException {
+        for (DefaultProjectGraph graph : graphs) {
+            if (graph.isAndroidLibrary()) {
+                buildscript.append("repositories {\n    google()\n    jcenter()\n}\n"
+                        + "dependencies {\n    classpath 'com.android.tools.build:gradle:"
+                        + TemplateOptions.getAndroidPluginVersion() + "'\n}");
+            }
+            appendText(graph.generate(integrator.getRoot())).execute(settings());
+        }
+        graphs.clear();
+
         wrap("buildscript {",
                 indent(buildscript, 1),
                 "}").appendTo(getBuildGradleFile());
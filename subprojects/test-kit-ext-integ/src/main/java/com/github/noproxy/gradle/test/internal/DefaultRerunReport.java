@@ -0,0 +1,124 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.noproxy.gradle.test.internal;
+
+import com.github.noproxy.gradle.test.api.RerunReport;
+import org.gradle.testkit.runner.BuildTask;
+import org.gradle.testkit.runner.TaskOutcome;
+import org.junit.Assert;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+class DefaultRerunReport implements RerunReport {
+    private final List<String> missedTasks = new ArrayList<>();
+    private final Map<String, Set<String>> differingInputs = new LinkedHashMap<>();
+    private final Map<String, Map<String, String>> firstInputs;
+    private final Map<String, Map<String, String>> secondInputs;
+    private final boolean configurationCacheEnabled;
+    private final boolean configurationCacheReused;
+
+    DefaultRerunReport(List<BuildTask> secondTasks, Set<TaskOutcome> reusedOutcomes,
+                       Map<String, Map<String, String>> firstInputs, Map<String, Map<String, String>> secondInputs,
+                       boolean configurationCacheEnabled, boolean configurationCacheReused) {
+        this.firstInputs = firstInputs;
+        this.secondInputs = secondInputs;
+        this.configurationCacheEnabled = configurationCacheEnabled;
+        this.configurationCacheReused = configurationCacheReused;
+
+        for (BuildTask task : secondTasks) {
+            if (!reusedOutcomes.contains(task.getOutcome())) {
+                missedTasks.add(task.getPath());
+            }
+        }
+
+        final Set<String> paths = new LinkedHashSet<>(firstInputs.keySet());
+        paths.addAll(secondInputs.keySet());
+        for (String path : paths) {
+            final Map<String, String> first = firstInputs.getOrDefault(path, Collections.emptyMap());
+            final Map<String, String> second = secondInputs.getOrDefault(path, Collections.emptyMap());
+            final Set<String> names = new LinkedHashSet<>(first.keySet());
+            names.addAll(second.keySet());
+            names.remove(BuildCacheKeyRecorder.BUILD_CACHE_KEY);
+            final Set<String> differing = new LinkedHashSet<>();
+            for (String name : names) {
+                if (!Objects.equals(first.get(name), second.get(name))) {
+                    differing.add(name);
+                }
+            }
+            if (!differing.isEmpty()) {
+                differingInputs.put(path, Collections.unmodifiableSet(differing));
+            }
+        }
+    }
+
+    @Override
+    public List<String> getMissedTasks() {
+        return Collections.unmodifiableList(missedTasks);
+    }
+
+    @Override
+    public Map<String, Set<String>> getDifferingInputs() {
+        return Collections.unmodifiableMap(differingInputs);
+    }
+
+    @Override
+    public boolean isConfigurationCacheReused() {
+        return configurationCacheReused;
+    }
+
+    @Override
+    public void assertAllReused() {
+        if (configurationCacheEnabled) {
+            Assert.assertTrue("configuration cache was not reused by the second build", configurationCacheReused);
+        }
+        Assert.assertTrue(toString(), missedTasks.isEmpty());
+    }
+
+    @Override
+    public String toString() {
+        if (missedTasks.isEmpty()) {
+            return "all tasks were reused";
+        }
+
+        final StringBuilder builder = new StringBuilder("tasks missed in the second build:");
+        final Set<String> explained = new HashSet<>();
+        for (String path : missedTasks) {
+            builder.append("\n  ").append(path);
+            final Set<String> differing = differingInputs.get(path);
+            if (differing != null) {
+                explained.add(path);
+                for (String name : differing) {
+                    builder.append("\n    ").append(name).append(": ")
+                            .append(firstInputs.getOrDefault(path, Collections.emptyMap()).get(name)).append(" -> ")
+                            .append(secondInputs.getOrDefault(path, Collections.emptyMap()).get(name));
+                }
+            }
+        }
+        if (explained.isEmpty()) {
+            builder.append("\nno differing build cache key inputs were recorded");
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,214 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.noproxy.gradle.test.internal;
+
+import com.github.noproxy.gradle.test.api.StubClassSpec;
+import net.bytebuddy.jar.asm.ClassWriter;
+import net.bytebuddy.jar.asm.MethodVisitor;
+import net.bytebuddy.jar.asm.Opcodes;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Generates the bytecode of a stub class with the ASM shaded by byte-buddy. Method bodies are straight-line code,
+ * so no stack map frames are needed.
+ */
+class DefaultStubClassSpec implements StubClassSpec {
+    private static final String STUB_EXCEPTION = "java/lang/RuntimeException";
+    private static final String STUB_MESSAGE = "Stub!";
+    private final String className;
+    private final List<String> interfaces = new ArrayList<>();
+    private final List<String[]> fields = new ArrayList<>();
+    private final List<Method> methods = new ArrayList<>();
+    private String superclass = "java.lang.Object";
+    private boolean isInterface;
+    private boolean isAbstract;
+
+    DefaultStubClassSpec(String className) {
+        this.className = className;
+    }
+
+    static String internalName(String type) {
+        return type.replace('.', '/');
+    }
+
+    static String descriptor(String type) {
+        int dimensions = 0;
+        String component = type.trim();
+        while (component.endsWith("[]")) {
+            dimensions++;
+            component = component.substring(0, component.length() - 2).trim();
+        }
+
+        final StringBuilder descriptor = new StringBuilder();
+        for (int i = 0; i < dimensions; i++) {
+            descriptor.append('[');
+        }
+        switch (component) {
+            case "void":
+                return descriptor.append('V').toString();
+            case "boolean":
+                return descriptor.append('Z').toString();
+            case "byte":
+                return descriptor.append('B').toString();
+            case "char":
+                return descriptor.append('C').toString();
+            case "short":
+                return descriptor.append('S').toString();
+            case "int":
+                return descriptor.append('I').toString();
+            case "long":
+                return descriptor.append('J').toString();
+            case "float":
+                return descriptor.append('F').toString();
+            case "double":
+                return descriptor.append('D').toString();
+            default:
+                return descriptor.append('L').append(internalName(component)).append(';').toString();
+        }
+    }
+
+    private static String methodDescriptor(String returnType, String... parameterTypes) {
+        final StringBuilder descriptor = new StringBuilder("(");
+        for (String parameterType : parameterTypes) {
+            descriptor.append(descriptor(parameterType));
+        }
+        return descriptor.append(')').append(descriptor(returnType)).toString();
+    }
+
+    private static void throwStub(MethodVisitor method) {
+        method.visitTypeInsn(Opcodes.NEW, STUB_EXCEPTION);
+        method.visitInsn(Opcodes.DUP);
+        method.visitLdcInsn(STUB_MESSAGE);
+        method.visitMethodInsn(Opcodes.INVOKESPECIAL, STUB_EXCEPTION, "<init>", "(Ljava/lang/String;)V", false);
+        method.visitInsn(Opcodes.ATHROW);
+    }
+
+    @Override
+    public void setSuperclass(String superclass) {
+        this.superclass = superclass;
+    }
+
+    @Override
+    public void interfaces(String... names) {
+        Collections.addAll(interfaces, names);
+    }
+
+    @Override
+    public void setInterface(boolean isInterface) {
+        this.isInterface = isInterface;
+    }
+
+    @Override
+    public void setAbstract(boolean isAbstract) {
+        this.isAbstract = isAbstract;
+    }
+
+    @Override
+    public void field(String name, String type) {
+        fields.add(new String[]{name, type});
+    }
+
+    @Override
+    public void method(String name, String returnType, String... parameterTypes) {
+        methods.add(new Method(name, methodDescriptor(returnType, parameterTypes), false));
+    }
+
+    @Override
+    public void staticMethod(String name, String returnType, String... parameterTypes) {
+        methods.add(new Method(name, methodDescriptor(returnType, parameterTypes), true));
+    }
+
+    @Override
+    public void constructor(String... parameterTypes) {
+        if (parameterTypes.length > 0) {
+            methods.add(new Method("<init>", methodDescriptor("void", parameterTypes), false));
+        }
+    }
+
+    String getClassName() {
+        return className;
+    }
+
+    byte[] generate() {
+        final ClassWriter writer = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        int access = Opcodes.ACC_PUBLIC;
+        if (isInterface) {
+            access |= Opcodes.ACC_INTERFACE | Opcodes.ACC_ABSTRACT;
+        } else {
+            access |= Opcodes.ACC_SUPER;
+            if (isAbstract) {
+                access |= Opcodes.ACC_ABSTRACT;
+            }
+        }
+        final String superName = isInterface ? "java/lang/Object" : internalName(superclass);
+        final String[] interfaceNames = interfaces.stream().map(DefaultStubClassSpec::internalName).toArray(String[]::new);
+        writer.visit(Opcodes.V1_8, access, internalName(className), null, superName, interfaceNames);
+
+        for (String[] field : fields) {
+            final int fieldAccess = isInterface
+                    ? Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC | Opcodes.ACC_FINAL
+                    : Opcodes.ACC_PUBLIC;
+            writer.visitField(fieldAccess, field[0], descriptor(field[1]), null, null).visitEnd();
+        }
+
+        if (!isInterface) {
+            final MethodVisitor constructor = writer.visitMethod(Opcodes.ACC_PUBLIC, "<init>", "()V", null, null);
+            constructor.visitCode();
+            constructor.visitVarInsn(Opcodes.ALOAD, 0);
+            constructor.visitMethodInsn(Opcodes.INVOKESPECIAL, superName, "<init>", "()V", false);
+            constructor.visitInsn(Opcodes.RETURN);
+            constructor.visitMaxs(0, 0);
+            constructor.visitEnd();
+        }
+
+        for (Method method : methods) {
+            final boolean isAbstractMethod = isInterface && !method.isStatic;
+            int methodAccess = Opcodes.ACC_PUBLIC;
+            if (method.isStatic) {
+                methodAccess |= Opcodes.ACC_STATIC;
+            }
+            if (isAbstractMethod) {
+                methodAccess |= Opcodes.ACC_ABSTRACT;
+            }
+            final MethodVisitor visitor = writer.visitMethod(methodAccess, method.name, method.descriptor, null, null);
+            if (!isAbstractMethod) {
+                visitor.visitCode();
+                throwStub(visitor);
+                visitor.visitMaxs(0, 0);
+            }
+            visitor.visitEnd();
+        }
+
+        writer.visitEnd();
+        return writer.toByteArray();
+    }
+
+    private static class Method {
+        private final String name;
+        private final String descriptor;
+        private final boolean isStatic;
+
+        Method(String name, String descriptor, boolean isStatic) {
+            this.name = name;
+            this.descriptor = descriptor;
+            this.isStatic = isStatic;
+        }
+    }
+}
@@ -18,60 +18,221 @@ package com.github.noproxy.gradle.test.internal;
 
 import com.github.noproxy.gradle.test.api.ZipIntegrator;
 import org.apache.commons.io.FilenameUtils;
-import org.codehaus.groovy.runtime.ResourceGroovyMethods;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.spockframework.util.NotThreadSafe;
 
+import java.io.BufferedOutputStream;
 import java.io.Closeable;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
 import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.SimpleFileVisitor;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
 
+/**
+ * Entries are written to the archive as they are declared, the archive is opened by the first one. Files created
+ * through the {@link com.github.noproxy.gradle.test.api.FileIntegrator} methods are staged and streamed into the
+ * archive on close, after the direct entries; their staging directory is only created by the first of them.
+ * <p>
+ * In reproducible or parallel mode all entries are held until close and the archive is written by
+ * {@link ZipAssembler} instead.
+ */
 @NotThreadSafe
 class DefaultZipIntegrator extends DefaultFileIntegrator implements ZipIntegrator, Closeable {
+    private static final int BUFFER_SIZE = 64 * 1024;
     private final File destZipFile;
+    private final FileIntegratorInternal parent;
+    private final List<ZipAssembler.Source> deferred = new ArrayList<>();
+    private boolean reproducible = Boolean.getBoolean("noproxy.zip.reproducible");
+    private boolean parallelCompression = Boolean.getBoolean("noproxy.zip.parallelCompression");
+    private CompressionPolicy compressionPolicy = path -> Compression.DEFLATED;
+    private ZipOutputStream zipStream;
+    @Nullable
+    private File stagingDir;
 
     DefaultZipIntegrator(@NotNull File destZipFile, @NotNull FileIntegratorInternal parent) {
-        super(parent.newTempDir("zip", FilenameUtils.getBaseName(destZipFile.getName())), parent);
+        super(parent);
         this.destZipFile = destZipFile;
+        this.parent = parent;
+    }
+
+    private static List<ZipAssembler.Source> stagedFiles(Path root) throws IOException {
+        final List<ZipAssembler.Source> staged = new ArrayList<>();
+        if (!Files.isDirectory(root)) {
+            return staged;
+        }
+        try (DirectoryStream<Path> children = Files.newDirectoryStream(root)) {
+            if (!children.iterator().hasNext()) {
+                return staged;
+            }
+        }
+        Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                if (!attrs.isRegularFile()) {
+                    throw new AssertionError("not support file type: " + attrs);
+                }
+                staged.add(ZipAssembler.Source.of(root.relativize(file).toString(), file));
+                return super.visitFile(file, attrs);
+            }
+        });
+        return staged;
+    }
+
+    @Override
+    public File getRoot() {
+        if (stagingDir == null) {
+            stagingDir = parent.newTempDir("zip", FilenameUtils.getBaseName(destZipFile.getName()));
+        }
+        return stagingDir;
+    }
+
+    @Override
+    public void setReproducible(boolean reproducible) {
+        checkNoEntryWritten();
+        this.reproducible = reproducible;
+    }
+
+    @Override
+    public void setParallelCompression(boolean parallel) {
+        checkNoEntryWritten();
+        this.parallelCompression = parallel;
+    }
+
+    @Override
+    public void setCompressionPolicy(CompressionPolicy policy) {
+        this.compressionPolicy = policy;
+    }
+
+    /**
+     * Apply the archive options of this integrator to a nested one, like the classes.jar of an aar.
+     */
+    void copyOptionsTo(DefaultZipIntegrator nested) {
+        nested.setReproducible(reproducible);
+        nested.setParallelCompression(parallelCompression);
+        nested.setCompressionPolicy(compressionPolicy);
+    }
+
+    private void checkNoEntryWritten() {
+        if (zipStream != null) {
+            throw new IllegalStateException("archive options must be set before the first entry of " + destZipFile);
+        }
+    }
+
+    private boolean isDeferred() {
+        return reproducible || parallelCompression;
+    }
+
+    @Override
+    public void entry(String path, byte[] content) {
+        addEntry(ZipAssembler.Source.of(path, content));
+    }
+
+    @Override
+    public void entry(String path, CharSequence text) {
+        entry(path, text.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public void entry(String path, File source) {
+        addEntry(ZipAssembler.Source.of(path, source.toPath()));
+    }
+
+    private void addEntry(ZipAssembler.Source source) {
+        if (isDeferred()) {
+            deferred.add(source);
+            return;
+        }
+        try {
+            writeEntry(source);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void writeEntry(ZipAssembler.Source source) throws IOException {
+        final ZipEntry entry = new ZipEntry(source.getName());
+        if (compressionPolicy.compressionOf(source.getName()) == Compression.STORED) {
+            entry.setMethod(ZipEntry.STORED);
+            entry.setSize(source.size());
+            entry.setCompressedSize(source.size());
+            entry.setCrc(source.crc());
+        } else {
+            entry.setMethod(ZipEntry.DEFLATED);
+        }
+        openZipStream().putNextEntry(entry);
+        source.copyTo(zipStream);
+        zipStream.closeEntry();
+    }
+
+    private ZipOutputStream openZipStream() throws IOException {
+        if (zipStream == null) {
+            zipStream = new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(destZipFile), BUFFER_SIZE));
+        }
+        return zipStream;
     }
 
     @Override
     public void close() throws IOException {
         super.close();
 
-        try (final FileOutputStream foo = new FileOutputStream(destZipFile);
-             final ZipOutputStream zipOOS = new ZipOutputStream(foo)) {
-            Path root = getRoot().toPath();
-            Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
-                @Override
-                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
-                    final Path relativize = root.relativize(file);
-                    final ZipEntry entry = new ZipEntry(relativize.toString());
-                    entry.setMethod(ZipEntry.DEFLATED);
-                    zipOOS.putNextEntry(entry);
-                    if (attrs.isDirectory()) {
-                        // nothing
-                    } else if (attrs.isRegularFile()) {
-                        zipOOS.write(ResourceGroovyMethods.getBytes(file.toFile()));
-                    } else {
-                        throw new AssertionError("not support file type: " + attrs);
-                    }
-                    zipOOS.closeEntry();
-
-                    return super.visitFile(file, attrs);
-                }
-            });
+        final List<ZipAssembler.Source> staged = stagingDir == null
+                ? new ArrayList<>() : stagedFiles(stagingDir.toPath());
+        if (isDeferred()) {
+            final List<ZipAssembler.Source> entries = new ArrayList<>(deferred);
+            entries.addAll(staged);
+            deferred.clear();
+            assemble(reproducible ? ZipAssembler.Source.sortedByName(entries) : entries);
+            return;
+        }
+
+        try (final ZipOutputStream zipOOS = openZipStream()) {
+            for (ZipAssembler.Source source : staged) {
+                writeEntry(source);
+            }
+        } finally {
+            zipStream = null;
         }
     }
 
+    private void assemble(List<ZipAssembler.Source> entries) throws IOException {
+        final Stream<ZipAssembler.Source> stream = parallelCompression ? entries.parallelStream() : entries.stream();
+        final List<ZipAssembler.Compressed> compressed;
+        try {
+            compressed = stream.map(source -> {
+                try {
+                    return ZipAssembler.compress(source, compressionPolicy.compressionOf(source.getName()));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }).collect(Collectors.toList());
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(destZipFile), BUFFER_SIZE)) {
+            final ZipAssembler assembler = new ZipAssembler(out,
+                    reproducible ? ZipAssembler.REPRODUCIBLE_TIME : System.currentTimeMillis());
+            for (ZipAssembler.Compressed entry : compressed) {
+                assembler.add(entry);
+            }
+            assembler.finish();
+        }
+    }
 
     @NotNull
     @Override
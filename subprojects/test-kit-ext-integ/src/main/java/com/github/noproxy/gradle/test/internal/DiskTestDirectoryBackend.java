@@ -0,0 +1,80 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.noproxy.gradle.test.internal;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
+import java.util.regex.Pattern;
+
+class DiskTestDirectoryBackend implements TestDirectoryBackend {
+    static final String NAME = "disk";
+    static final DiskTestDirectoryBackend SHARED = new DiskTestDirectoryBackend();
+    private static final int ALL_DIGITS_AND_LETTERS_RADIX = 36;
+    private static final int MAX_RANDOM_PART_VALUE = Integer.valueOf("zzzzz", ALL_DIGITS_AND_LETTERS_RADIX);
+    private static final String TRASH_DIR = ".trash";
+    private static final Pattern WINDOWS_RESERVED_NAMES = Pattern.compile("(con)|(prn)|(aux)|(nul)|(com\\d)|(lpt\\d)", Pattern.CASE_INSENSITIVE);
+
+    static File join(File file, Object... path) {
+        File current = file.getAbsoluteFile();
+        for (Object p : path) {
+            current = new File(current, p.toString());
+        }
+        try {
+            return current.getCanonicalFile();
+        } catch (IOException e) {
+            throw new RuntimeException(String.format("Could not canonicalise '%s'.", current), e);
+        }
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    /**
+     * The directory test directories of the given provider root are actually created in.
+     */
+    protected File rootOf(File root) {
+        return root;
+    }
+
+    @Override
+    public File create(File root, String prefix) {
+        while (true) {
+            // Use a random prefix to avoid reusing test directories
+            String randomPrefix = Integer.toString(ThreadLocalRandom.current().nextInt(MAX_RANDOM_PART_VALUE), ALL_DIGITS_AND_LETTERS_RADIX);
+            if (WINDOWS_RESERVED_NAMES.matcher(randomPrefix).matches()) {
+                continue;
+            }
+            File result = join(rootOf(root), prefix, randomPrefix);
+            if (result.mkdirs()) {
+                return result;
+            }
+        }
+    }
+
+    @Override
+    public void delete(File root, File dir, @Nullable Consumer<File> beforeDelete, @Nullable LongConsumer deleted)
+            throws IOException {
+        BackgroundDeleter.shared().delete(dir, join(rootOf(root), TRASH_DIR), beforeDelete, deleted);
+    }
+}
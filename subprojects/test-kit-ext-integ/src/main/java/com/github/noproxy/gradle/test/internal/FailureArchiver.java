@@ -0,0 +1,165 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.noproxy.gradle.test.internal;
+
+import org.apache.commons.io.FileUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Keeps the relevant parts of the test directory of a failed test, build scripts, logs and reports by default, as a
+ * zip in {@code build/reports/failed-test-dirs/worker-<id>}, listed in the {@code index.txt} next to them. The
+ * integration test task deletes the whole {@code noproxy.testdir.failureReportDir} before every run, as worker ids
+ * grow across the builds of a daemon, and the directory of a worker is emptied by its first failure for runs
+ * outside of Gradle.
+ * <p>
+ * All archives of a test worker share a budget of {@code noproxy.testdir.failureArchiveMaxMb} (100) uncompressed
+ * megabytes, a file that does not fit is left out. The selected files are the ones matching one of the comma
+ * separated globs of {@code noproxy.testdir.failureArchiveIncludes} and none of
+ * {@code noproxy.testdir.failureArchiveExcludes}, relative to the test directory.
+ */
+public class FailureArchiver {
+    private static final String DEFAULT_INCLUDES = "**.gradle,**.gradle.kts,**.properties,**.log,**AndroidManifest.xml,"
+            + "**build/reports/**,**build/test-results/**,**build/outputs/logs/**";
+    private static final String DEFAULT_EXCLUDES = "**.gradle/**";
+    private static final FailureArchiver SHARED = new FailureArchiver(
+            new File(System.getProperty("noproxy.testdir.failureReportDir", "build/reports/failed-test-dirs"),
+                    "worker-" + TestWorkers.getWorkerId()),
+            Long.getLong("noproxy.testdir.failureArchiveMaxMb", 100) * 1024 * 1024,
+            System.getProperty("noproxy.testdir.failureArchiveIncludes", DEFAULT_INCLUDES),
+            System.getProperty("noproxy.testdir.failureArchiveExcludes", DEFAULT_EXCLUDES));
+    private final File reportDir;
+    private final AtomicLong remainingBytes;
+    private final List<PathMatcher> includes;
+    private final List<PathMatcher> excludes;
+    private final Set<File> reserved = new HashSet<>();
+    private boolean started;
+
+    FailureArchiver(File reportDir, long maxBytes, String includes, String excludes) {
+        this.reportDir = reportDir;
+        this.remainingBytes = new AtomicLong(maxBytes);
+        this.includes = matchers(includes);
+        this.excludes = matchers(excludes);
+    }
+
+    public static FailureArchiver shared() {
+        return SHARED;
+    }
+
+    private static List<PathMatcher> matchers(String globs) {
+        return Stream.of(globs.split(","))
+                .map(String::trim)
+                .filter(glob -> !glob.isEmpty())
+                .map(glob -> FileSystems.getDefault().getPathMatcher("glob:" + glob))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * The archive the test directory of the given test will be written to.
+     */
+    synchronized File archiveFor(String testName) {
+        if (!started) {
+            try {
+                FileUtils.deleteDirectory(reportDir);
+                Files.createDirectories(reportDir.toPath());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            started = true;
+        }
+        final String safeName = testName.replaceAll("[^\\w.-]", "_");
+        File archive = new File(reportDir, safeName + ".zip");
+        for (int i = 2; !reserved.add(archive); i++) {
+            archive = new File(reportDir, safeName + "-" + i + ".zip");
+        }
+        return archive;
+    }
+
+    private boolean isSelected(Path relative) {
+        return includes.stream().anyMatch(matcher -> matcher.matches(relative))
+                && excludes.stream().noneMatch(matcher -> matcher.matches(relative));
+    }
+
+    private boolean reserve(long bytes) {
+        while (true) {
+            final long remaining = remainingBytes.get();
+            if (remaining < bytes) {
+                return false;
+            }
+            if (remainingBytes.compareAndSet(remaining, remaining - bytes)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Write the selected files of the directory to the archive, usually from a background thread.
+     */
+    void archive(File dir, File archive, String testName) {
+        final Path root = dir.toPath();
+        final List<Path> archived = new ArrayList<>();
+        int skipped = 0;
+        try {
+            final List<Path> selected;
+            try (Stream<Path> files = Files.walk(root)) {
+                selected = files.filter(Files::isRegularFile)
+                        .filter(file -> isSelected(root.relativize(file)))
+                        .sorted()
+                        .collect(Collectors.toList());
+            }
+            try (ZipOutputStream zip = new ZipOutputStream(Files.newOutputStream(archive.toPath()))) {
+                for (Path file : selected) {
+                    if (!reserve(Files.size(file))) {
+                        skipped++;
+                        continue;
+                    }
+                    zip.putNextEntry(new ZipEntry(root.relativize(file).toString().replace(File.separatorChar, '/')));
+                    Files.copy(file, zip);
+                    zip.closeEntry();
+                    archived.add(file);
+                }
+            }
+            index(testName + " -> " + archive.getName() + " (" + archived.size() + " files"
+                    + (skipped > 0 ? ", " + skipped + " over budget" : "") + ")");
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private synchronized void index(String line) throws IOException {
+        final Path index = new File(reportDir, "index.txt").toPath();
+        Files.write(index, (line + "\n").getBytes(StandardCharsets.UTF_8),
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+}
@@ -26,6 +26,18 @@ public interface FileIntegratorInternal extends FileIntegrator, HidingDirectoryP
     @ParameterWillBeClosed
     void addCloseable(Closeable closeable);
 
+    /**
+     * Close the closeable with the other closeables of this integrator, only after the given ones which must have
+     * been added to this integrator too.
+     */
+    @ParameterWillBeClosed
+    void addCloseable(Closeable closeable, Closeable... dependencies);
+
+    /**
+     * @return the jars waiting to be compiled in this integrator tree, shared by the root integrator
+     */
+    PendingCompilations getPendingCompilations();
+
     @Closer
     @Override
     void close() throws IOException;
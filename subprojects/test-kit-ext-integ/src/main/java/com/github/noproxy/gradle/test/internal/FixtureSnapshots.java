@@ -0,0 +1,177 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.noproxy.gradle.test.internal;
+
+import com.github.noproxy.gradle.test.api.FileIntegrator;
+import com.github.noproxy.gradle.test.api.TemplateOptions;
+import com.google.common.hash.Hashing;
+import org.apache.commons.io.FileUtils;
+import org.gradle.api.Action;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.UUID;
+
+/**
+ * A cache of generated test projects, shared by all tests and test runs until the build directory is cleaned.
+ * <p>
+ * A fixture is generated once into the cache, optionally warmed up by a build so its {@code build} and
+ * {@code .gradle} directories are snapshotted as well, then copied into every test directory asking for it; the
+ * generator does not run at all on a hit. The cache key is made of declared inputs only, the fixture key and the
+ * template options, so everything else the generator depends on, its helpers and captured variables included, must
+ * be part of the fixture key.
+ * <p>
+ * With system property {@code noproxy.fixture.hardLinks}, files are hard linked instead of copied, except the
+ * build scripts and properties the integrators append to and the {@code build} and {@code .gradle} directories
+ * Gradle rewrites in place. Tests must not modify the other files in place, the change would be visible to every
+ * later test.
+ */
+public class FixtureSnapshots {
+    private static final String CACHE_DIR_PROPERTY = "noproxy.fixture.cacheDir";
+    private static final String HARD_LINKS_PROPERTY = "noproxy.fixture.hardLinks";
+    private static final String DEFAULT_CACHE_DIR = "build/tmp/fixture-snapshots";
+    private static final String COMPLETE_MARKER = ".fixture-complete";
+    private static final String GRADLE_STATE_DIR = ".gradle";
+    private static final String BUILD_DIR = "build";
+    // bump when the integrators change the files they generate
+    private static final int LAYOUT_VERSION = 1;
+    private static final FixtureSnapshots SHARED = new FixtureSnapshots(
+            new File(System.getProperty(CACHE_DIR_PROPERTY, DEFAULT_CACHE_DIR)).getAbsoluteFile(),
+            Boolean.getBoolean(HARD_LINKS_PROPERTY));
+
+    private final File cacheDir;
+    private final boolean hardLinks;
+
+    FixtureSnapshots(File cacheDir, boolean hardLinks) {
+        this.cacheDir = cacheDir;
+        this.hardLinks = hardLinks;
+    }
+
+    public static FixtureSnapshots shared() {
+        return SHARED;
+    }
+
+    private static String keyOf(String key) {
+        return Hashing.sha256().newHasher()
+                .putInt(LAYOUT_VERSION)
+                .putString(key, StandardCharsets.UTF_8)
+                .putString(TemplateOptions.getAndroidPluginVersion(), StandardCharsets.UTF_8)
+                .hash().toString();
+    }
+
+    private static boolean isAppendedByIntegrators(Path file) {
+        final String name = file.getFileName().toString();
+        return name.endsWith(".gradle") || name.endsWith(".gradle.kts") || name.endsWith(".properties");
+    }
+
+    /**
+     * @return true for the files in the {@code build} and {@code .gradle} directories of every project
+     */
+    private static boolean isWrittenByGradle(Path relative) {
+        for (Path name : relative) {
+            if (name.toString().equals(BUILD_DIR) || name.toString().equals(GRADLE_STATE_DIR)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Copy the fixture into the target directory, generating it first when it is not in the cache yet.
+     *
+     * @param key       identifies the fixture, how it is warmed up and everything the generator depends on
+     * @param generator generates the fixture, it is closed after
+     * @param warmUp    runs a build in the generated fixture before it is snapshotted, or null
+     */
+    public void restore(String key, File target, Action<FileIntegrator> generator, @Nullable Action<File> warmUp) {
+        final File snapshot = new File(cacheDir, keyOf(key));
+        try {
+            if (!new File(snapshot, COMPLETE_MARKER).isFile()) {
+                create(snapshot, generator, warmUp);
+            }
+            copy(snapshot.toPath(), target.toPath());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not restore fixture '" + key + "' into " + target, e);
+        }
+    }
+
+    private void create(File snapshot, Action<FileIntegrator> generator, @Nullable Action<File> warmUp) throws IOException {
+        // generate in a private directory then rename, so concurrent workers never see a partial fixture
+        final File staging = new File(cacheDir, snapshot.getName() + "-" + UUID.randomUUID());
+        Actions.mkdirs().execute(staging);
+        final DefaultFileIntegrator integrator = new DefaultFileIntegrator(staging);
+        generator.execute(integrator);
+        integrator.close();
+        if (warmUp != null) {
+            warmUp.execute(staging);
+        }
+        Actions.createFile().execute(new File(staging, COMPLETE_MARKER));
+
+        try {
+            Files.move(staging.toPath(), snapshot.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        } catch (FileAlreadyExistsException e) {
+            // created by another worker meanwhile
+            FileUtils.deleteQuietly(staging);
+        } catch (IOException e) {
+            FileUtils.deleteQuietly(staging);
+            if (!new File(snapshot, COMPLETE_MARKER).isFile()) {
+                throw e;
+            }
+        }
+    }
+
+    private void copy(Path snapshot, Path target) throws IOException {
+        Files.walkFileTree(snapshot, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                Files.createDirectories(target.resolve(snapshot.relativize(dir).toString()));
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                final Path relative = snapshot.relativize(file);
+                if (relative.toString().equals(COMPLETE_MARKER)) {
+                    return FileVisitResult.CONTINUE;
+                }
+
+                final Path destination = target.resolve(relative.toString());
+                if (hardLinks && !isWrittenByGradle(relative) && !isAppendedByIntegrators(file)) {
+                    try {
+                        Files.deleteIfExists(destination);
+                        Files.createLink(destination, file);
+                        return FileVisitResult.CONTINUE;
+                    } catch (IOException | UnsupportedOperationException e) {
+                        // another file system or no link support, copy instead
+                    }
+                }
+                Files.copy(file, destination, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.COPY_ATTRIBUTES);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+}
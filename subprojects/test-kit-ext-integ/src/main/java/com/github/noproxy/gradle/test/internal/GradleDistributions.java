@@ -0,0 +1,345 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.noproxy.gradle.test.internal;
+
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipFile;
+import org.apache.commons.io.FileUtils;
+import org.gradle.testkit.runner.GradleRunner;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Resolves Gradle distributions from local files, so {@code setGradleVersion} works without network.
+ * <ul>
+ * <li>{@code noproxy.gradle.distributions}: a directory, or a {@code file:} URL of it, containing unpacked
+ * distributions named {@code gradle-<version>} or archives named {@code gradle-<version>-bin.zip} or
+ * {@code gradle-<version>-all.zip};</li>
+ * <li>{@code noproxy.gradle.distributionUrl}: a {@code file:} URL template, {@code %s} is replaced by the version;</li>
+ * <li>{@code noproxy.gradle.offline}: fail instead of letting TestKit download unknown versions.</li>
+ * </ul>
+ * An archive or directory with a sibling {@code <name>.sha256} file is verified against it the first time it is used.
+ * For a directory the checksum covers the relative paths and contents of its {@code lib} directory, a verified
+ * directory is marked in the {@code .unpacked} directory next to it with the size and modification time of every
+ * library, so later JVMs skip hashing it again.
+ * Archives are verified and unpacked once, next to them in {@code .unpacked}, with the POSIX permissions of their
+ * entries; the unpacked directory is marked with the size and modification time of the archive, so later JVMs use
+ * it without hashing the archive again. Every distribution is used in place, read-only, by all runners and
+ * workers.
+ */
+class GradleDistributions {
+    private static final String DISTRIBUTIONS_PROPERTY = "noproxy.gradle.distributions";
+    private static final String DISTRIBUTION_URL_PROPERTY = "noproxy.gradle.distributionUrl";
+    private static final String OFFLINE_PROPERTY = "noproxy.gradle.offline";
+    private static final String CHECKSUM_SUFFIX = ".sha256";
+    private static final String UNPACKED_DIR = ".unpacked";
+    private static final String UNPACKED_MARKER = ".unpacked-from";
+    private static final String VERIFIED_SUFFIX = ".verified";
+    private static final GradleDistributions SHARED = new GradleDistributions(
+            System.getProperty(DISTRIBUTIONS_PROPERTY),
+            System.getProperty(DISTRIBUTION_URL_PROPERTY),
+            Boolean.getBoolean(OFFLINE_PROPERTY));
+
+    @Nullable
+    private final File distributionsDir;
+    @Nullable
+    private final String distributionUrl;
+    private final boolean offline;
+    private final Map<String, File> installations = new ConcurrentHashMap<>();
+
+    GradleDistributions(@Nullable String distributionsDir, @Nullable String distributionUrl, boolean offline) {
+        this.distributionsDir = distributionsDir == null ? null : toFile(distributionsDir);
+        this.distributionUrl = distributionUrl;
+        this.offline = offline;
+    }
+
+    static GradleDistributions shared() {
+        return SHARED;
+    }
+
+    private static File toFile(String pathOrFileUrl) {
+        if (pathOrFileUrl.startsWith("file:")) {
+            return Paths.get(URI.create(pathOrFileUrl)).toFile();
+        }
+        return new File(pathOrFileUrl).getAbsoluteFile();
+    }
+
+    private static HashCode checksumOf(File distribution) throws IOException {
+        if (distribution.isFile()) {
+            return com.google.common.io.Files.asByteSource(distribution).hash(Hashing.sha256());
+        }
+
+        final Path lib = new File(distribution, "lib").toPath();
+        final Hasher hasher = Hashing.sha256().newHasher();
+        try (Stream<Path> files = Files.walk(lib)) {
+            for (Path file : files.filter(Files::isRegularFile).sorted().collect(Collectors.toList())) {
+                hasher.putString(lib.relativize(file).toString().replace('\\', '/'), StandardCharsets.UTF_8);
+                hasher.putBytes(Files.readAllBytes(file));
+            }
+        }
+        return hasher.hash();
+    }
+
+    private static void verify(File distribution) throws IOException {
+        final File checksumFile = new File(distribution.getParentFile(), distribution.getName() + CHECKSUM_SUFFIX);
+        if (!checksumFile.isFile()) {
+            return;
+        }
+
+        // the published .sha256 files contain the bare hex, sha256sum output has the file name after it
+        final String expected = new String(Files.readAllBytes(checksumFile.toPath()), StandardCharsets.UTF_8)
+                .trim().split("\\s+")[0].toLowerCase();
+        final String actual = checksumOf(distribution).toString();
+        if (!expected.equals(actual)) {
+            throw new IllegalStateException("Checksum mismatch for Gradle distribution " + distribution
+                    + ": expected " + expected + " but was " + actual);
+        }
+    }
+
+    private static File verifiedMarkerOf(File directory) {
+        return new File(new File(directory.getParentFile(), UNPACKED_DIR), directory.getName() + VERIFIED_SUFFIX);
+    }
+
+    /**
+     * @return the checksum file and the relative path, size and modification time of every file of {@code lib}, so
+     * the marker of a verified directory is stale as soon as one of them changes
+     */
+    private static String markerOfDirectory(File distribution) throws IOException {
+        final File checksumFile = new File(distribution.getParentFile(), distribution.getName() + CHECKSUM_SUFFIX);
+        final Hasher hasher = Hashing.sha256().newHasher();
+        hasher.putString(markerOf(checksumFile), StandardCharsets.UTF_8);
+        final Path lib = new File(distribution, "lib").toPath();
+        try (Stream<Path> files = Files.walk(lib)) {
+            for (Path file : files.filter(Files::isRegularFile).sorted().collect(Collectors.toList())) {
+                hasher.putString(lib.relativize(file).toString().replace('\\', '/'), StandardCharsets.UTF_8);
+                hasher.putString(markerOf(file.toFile()), StandardCharsets.UTF_8);
+            }
+        }
+        return hasher.hash().toString();
+    }
+
+    /**
+     * Verify the directory unless it was verified by an earlier JVM and none of its libraries changed since.
+     */
+    private static void verifyDirectory(File distribution) throws IOException {
+        final File marker = verifiedMarkerOf(distribution);
+        final String expected = markerOfDirectory(distribution);
+        if (marker.isFile() && new String(Files.readAllBytes(marker.toPath()), StandardCharsets.UTF_8).equals(expected)) {
+            return;
+        }
+        verify(distribution);
+        Files.createDirectories(marker.getParentFile().toPath());
+        // written aside then renamed, so a concurrent worker never reads a partial marker
+        final File staging = new File(marker.getParentFile(), marker.getName() + "-" + UUID.randomUUID());
+        Actions.execute(staging, Actions.setText(expected));
+        Files.move(staging.toPath(), marker.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static File unpackedDirOf(File archive) {
+        return new File(new File(archive.getParentFile(), UNPACKED_DIR), archive.getName());
+    }
+
+    private static String markerOf(File archive) {
+        return archive.length() + ":" + archive.lastModified();
+    }
+
+    /**
+     * @return the installation unpacked from this very archive, or null when it was not unpacked yet or the archive
+     * changed since
+     */
+    @Nullable
+    private static File unpacked(File archive) throws IOException {
+        final File marker = new File(unpackedDirOf(archive), UNPACKED_MARKER);
+        if (!marker.isFile()) {
+            return null;
+        }
+        final String content = new String(Files.readAllBytes(marker.toPath()), StandardCharsets.UTF_8);
+        return content.equals(markerOf(archive)) ? installationIn(unpackedDirOf(archive)) : null;
+    }
+
+    private static File unpack(File archive) throws IOException {
+        final File target = unpackedDirOf(archive);
+        // unpack to a private directory then rename, so concurrent workers never see a partial distribution
+        final File staging = new File(target.getParentFile(), target.getName() + "-" + UUID.randomUUID());
+        final boolean posix = FileSystems.getDefault().supportedFileAttributeViews().contains("posix");
+        try (ZipFile zip = new ZipFile(archive)) {
+            final Path stagingRoot = staging.toPath().normalize();
+            final Enumeration<ZipArchiveEntry> entries = zip.getEntries();
+            while (entries.hasMoreElements()) {
+                final ZipArchiveEntry entry = entries.nextElement();
+                final Path destination = stagingRoot.resolve(entry.getName()).normalize();
+                if (!destination.startsWith(stagingRoot)) {
+                    throw new IOException("illegal entry " + entry.getName() + " in " + archive);
+                }
+                if (entry.isDirectory()) {
+                    Files.createDirectories(destination);
+                } else {
+                    Files.createDirectories(destination.getParent());
+                    try (InputStream input = zip.getInputStream(entry)) {
+                        Files.copy(input, destination);
+                    }
+                    // only entries made on unix have permissions
+                    final int mode = entry.getUnixMode() & 0777;
+                    if (posix && entry.getPlatform() == ZipArchiveEntry.PLATFORM_UNIX && mode != 0) {
+                        Files.setPosixFilePermissions(destination, permissionsOf(mode));
+                    }
+                }
+            }
+        }
+        Actions.execute(new File(staging, UNPACKED_MARKER), Actions.setText(markerOf(archive)));
+
+        final File fresh = unpacked(archive);
+        if (fresh != null) {
+            // unpacked by another worker meanwhile
+            FileUtils.deleteQuietly(staging);
+            return fresh;
+        }
+        // an unpacked directory left by a changed archive is replaced
+        final File stale = new File(target.getParentFile(), target.getName() + "-" + UUID.randomUUID());
+        if (target.isDirectory()) {
+            try {
+                Files.move(target.toPath(), stale.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                // moved by another worker meanwhile
+            }
+        }
+        try {
+            Files.move(staging.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        } catch (FileAlreadyExistsException e) {
+            FileUtils.deleteQuietly(staging);
+        } catch (IOException e) {
+            FileUtils.deleteQuietly(staging);
+            if (!target.isDirectory()) {
+                throw e;
+            }
+        } finally {
+            FileUtils.deleteQuietly(stale);
+        }
+        return installationIn(target);
+    }
+
+    private static Set<PosixFilePermission> permissionsOf(int mode) {
+        final Set<PosixFilePermission> permissions = EnumSet.noneOf(PosixFilePermission.class);
+        // declared from OWNER_READ to OTHERS_EXECUTE, like the bits from 0400 to 0001
+        final PosixFilePermission[] all = PosixFilePermission.values();
+        for (int i = 0; i < all.length; i++) {
+            if ((mode & (0400 >> i)) != 0) {
+                permissions.add(all[i]);
+            }
+        }
+        return permissions;
+    }
+
+    // archives have a single gradle-<version> root directory
+    private static File installationIn(File unpacked) {
+        final File[] roots = unpacked.listFiles(File::isDirectory);
+        if (roots == null || roots.length != 1) {
+            throw new IllegalStateException("Unexpected layout of Gradle distribution in " + unpacked);
+        }
+        return roots[0];
+    }
+
+    /**
+     * Configure the runner to use the given version, from local files when possible.
+     *
+     * @throws IllegalStateException when a local source is configured, or offline is set, and the version is missing
+     */
+    void apply(GradleRunner runner, String version) {
+        if (distributionsDir == null && distributionUrl == null) {
+            if (offline) {
+                throw new IllegalStateException("Gradle " + version + " is not available offline, configure system "
+                        + "property " + DISTRIBUTIONS_PROPERTY + " or " + DISTRIBUTION_URL_PROPERTY);
+            }
+            runner.withGradleVersion(version);
+            return;
+        }
+
+        runner.withGradleInstallation(installations.computeIfAbsent(version, this::resolve));
+    }
+
+    private File resolve(String version) {
+        final List<File> candidates = candidatesOf(version);
+        for (File candidate : candidates) {
+            if (!candidate.exists()) {
+                continue;
+            }
+            try {
+                if (candidate.isDirectory()) {
+                    verifyDirectory(candidate);
+                    return candidate;
+                }
+                final File unpacked = unpacked(candidate);
+                if (unpacked != null) {
+                    return unpacked;
+                }
+                verify(candidate);
+                return unpack(candidate);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not prepare Gradle distribution " + candidate, e);
+            }
+        }
+
+        final StringBuilder message = new StringBuilder("Gradle " + version + " is not available offline, tried:");
+        candidates.forEach(candidate -> message.append("\n    ").append(candidate));
+        if (distributionsDir != null) {
+            final String[] available = distributionsDir.list((dir, name) -> name.startsWith("gradle-")
+                    && !name.endsWith(CHECKSUM_SUFFIX));
+            message.append("\navailable in ").append(distributionsDir).append(": ")
+                    .append(available == null ? "[]" : Arrays.toString(available));
+        }
+        throw new IllegalStateException(message.toString());
+    }
+
+    private List<File> candidatesOf(String version) {
+        final Stream.Builder<File> candidates = Stream.builder();
+        if (distributionsDir != null) {
+            candidates.add(new File(distributionsDir, "gradle-" + version));
+            candidates.add(new File(distributionsDir, "gradle-" + version + "-bin.zip"));
+            candidates.add(new File(distributionsDir, "gradle-" + version + "-all.zip"));
+        }
+        if (distributionUrl != null) {
+            candidates.add(toFile(String.format(distributionUrl, version)));
+        }
+        return candidates.build().collect(Collectors.toList());
+    }
+}
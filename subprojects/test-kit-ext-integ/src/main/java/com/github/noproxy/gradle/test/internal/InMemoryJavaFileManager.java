@@ -0,0 +1,246 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.noproxy.gradle.test.internal;
+
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.ForwardingJavaFileObject;
+import javax.tools.JavaFileManager;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.StandardLocation;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Keeps the classes compiled by javac in memory, everything else is delegated to the standard file manager.
+ * <p>
+ * Sources belong to an owner: a class belongs to the owner of the source javac compiled it from. Classes generated
+ * without javac can be added to the classpath.
+ * <p>
+ * The classpath directories javac looked into and the files it read from them are recorded, so a cached result can be
+ * checked against exactly what the compilation depended on instead of against whole directories such as the test
+ * classes which change all the time.
+ */
+class InMemoryJavaFileManager extends ForwardingJavaFileManager<StandardJavaFileManager> {
+    private final Map<Object, Map<String, byte[]>> classesByOwner = new HashMap<>();
+    private final Map<String, byte[]> classpathClasses = new HashMap<>();
+    private final Set<File> classpathInputs = new HashSet<>();
+
+    InMemoryJavaFileManager(StandardJavaFileManager fileManager) {
+        super(fileManager);
+    }
+
+    static JavaFileObject source(Object owner, String className, String javaSource) {
+        return new SourceFile(owner, className, javaSource);
+    }
+
+    private static String packageOf(String className) {
+        final int split = className.lastIndexOf('.');
+        return split < 0 ? "" : className.substring(0, split);
+    }
+
+    void addClasspathClasses(Map<String, byte[]> classes) {
+        classpathClasses.putAll(classes);
+    }
+
+    /**
+     * @return the package directories listed and the files read from the classpath directories
+     */
+    Set<File> getClasspathInputs() {
+        synchronized (classpathInputs) {
+            return new HashSet<>(classpathInputs);
+        }
+    }
+
+    @Override
+    public Iterable<JavaFileObject> list(JavaFileManager.Location location, String packageName,
+                                         Set<JavaFileObject.Kind> kinds, boolean recurse) throws IOException {
+        final Iterable<JavaFileObject> listed = super.list(location, packageName, kinds, recurse);
+        if (location != StandardLocation.CLASS_PATH) {
+            return listed;
+        }
+
+        final List<JavaFileObject> files = new ArrayList<>();
+        for (JavaFileObject file : listed) {
+            files.add("file".equals(file.toUri().getScheme()) ? new RecordingFile(file) : file);
+        }
+        final Iterable<? extends File> entries = fileManager.getLocation(StandardLocation.CLASS_PATH);
+        if (entries != null) {
+            synchronized (classpathInputs) {
+                for (File entry : entries) {
+                    if (entry.isDirectory()) {
+                        classpathInputs.add(new File(entry, packageName.replace('.', File.separatorChar)));
+                    }
+                }
+            }
+        }
+        if (!kinds.contains(JavaFileObject.Kind.CLASS)) {
+            return files;
+        }
+
+        classpathClasses.forEach((className, bytes) -> {
+            final String classPackage = packageOf(className);
+            final boolean nested = packageName.isEmpty() || classPackage.startsWith(packageName + ".");
+            if (classPackage.equals(packageName) || recurse && nested) {
+                files.add(new ClasspathClass(className, bytes));
+            }
+        });
+        return files;
+    }
+
+    @Override
+    public String inferBinaryName(JavaFileManager.Location location, JavaFileObject file) {
+        if (file instanceof ClasspathClass) {
+            return ((ClasspathClass) file).className;
+        }
+        if (file instanceof RecordingFile) {
+            return super.inferBinaryName(location, ((RecordingFile) file).getDelegate());
+        }
+        return super.inferBinaryName(location, file);
+    }
+
+    @Override
+    public boolean isSameFile(FileObject first, FileObject second) {
+        return super.isSameFile(unwrap(first), unwrap(second));
+    }
+
+    @Override
+    public JavaFileObject getJavaFileForOutput(JavaFileManager.Location location, String className,
+                                               JavaFileObject.Kind kind, FileObject sibling) throws IOException {
+        if (location == StandardLocation.CLASS_OUTPUT && kind == JavaFileObject.Kind.CLASS
+                && sibling instanceof SourceFile) {
+            return new ClassFile(((SourceFile) sibling).owner, className);
+        }
+        return super.getJavaFileForOutput(location, className, kind, sibling);
+    }
+
+    /**
+     * @return the bytes of the classes compiled from the sources of the owner by binary class name,
+     * in the order they were written
+     */
+    Map<String, byte[]> getClasses(Object owner) {
+        synchronized (classesByOwner) {
+            return new LinkedHashMap<>(classesByOwner.getOrDefault(owner, new LinkedHashMap<>()));
+        }
+    }
+
+    private static FileObject unwrap(FileObject file) {
+        return file instanceof RecordingFile ? ((RecordingFile) file).getDelegate() : file;
+    }
+
+    private static URI uri(String className, JavaFileObject.Kind kind) {
+        return URI.create("mem:///" + className.replace('.', '/') + kind.extension);
+    }
+
+    private static class SourceFile extends SimpleJavaFileObject {
+        private final Object owner;
+        private final String javaSource;
+
+        SourceFile(Object owner, String className, String javaSource) {
+            super(uri(className, Kind.SOURCE), Kind.SOURCE);
+            this.owner = owner;
+            this.javaSource = javaSource;
+        }
+
+        @Override
+        public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+            return javaSource;
+        }
+    }
+
+    private static class ClasspathClass extends SimpleJavaFileObject {
+        private final String className;
+        private final byte[] bytes;
+
+        ClasspathClass(String className, byte[] bytes) {
+            super(uri(className, Kind.CLASS), Kind.CLASS);
+            this.className = className;
+            this.bytes = bytes;
+        }
+
+        @Override
+        public InputStream openInputStream() {
+            return new ByteArrayInputStream(bytes);
+        }
+    }
+
+    private class RecordingFile extends ForwardingJavaFileObject<JavaFileObject> {
+        RecordingFile(JavaFileObject file) {
+            super(file);
+        }
+
+        JavaFileObject getDelegate() {
+            return fileObject;
+        }
+
+        @Override
+        public InputStream openInputStream() throws IOException {
+            record();
+            return super.openInputStream();
+        }
+
+        @Override
+        public CharSequence getCharContent(boolean ignoreEncodingErrors) throws IOException {
+            record();
+            return super.getCharContent(ignoreEncodingErrors);
+        }
+
+        private void record() {
+            synchronized (classpathInputs) {
+                classpathInputs.add(new File(toUri()));
+            }
+        }
+    }
+
+    private class ClassFile extends SimpleJavaFileObject {
+        private final Object owner;
+        private final String className;
+
+        ClassFile(Object owner, String className) {
+            super(uri(className, Kind.CLASS), Kind.CLASS);
+            this.owner = owner;
+            this.className = className;
+        }
+
+        @Override
+        public OutputStream openOutputStream() {
+            return new ByteArrayOutputStream() {
+                @Override
+                public void close() throws IOException {
+                    super.close();
+                    synchronized (classesByOwner) {
+                        classesByOwner.computeIfAbsent(owner, key -> new LinkedHashMap<>()).put(className, toByteArray());
+                    }
+                }
+            };
+        }
+    }
+}
@@ -47,11 +47,20 @@ public class Integrators {
 
     public static MavenIntegrator mavenDefaults(FileIntegrator closer) {
         final FileIntegratorInternal closerInternal = (FileIntegratorInternal) closer;
-        final DefaultMavenIntegrator maven = new DefaultMavenIntegrator(closerInternal.mavenDefaults());
-        closerInternal.addCloseable(maven);
+        final FileIntegrator mavenRoot = closerInternal.mavenDefaults();
+        final DefaultMavenIntegrator maven = new DefaultMavenIntegrator(mavenRoot);
+        // the metadata is written after the artifacts under the maven root
+        closerInternal.addCloseable(maven, mavenRoot);
         return maven;
     }
 
+    /**
+     * Modules published to the shared repository are generated once for all tests, see {@link SharedMavenIntegrator}.
+     */
+    public static MavenIntegrator sharedMaven() {
+        return new SharedMavenIntegrator();
+    }
+
     static ZipIntegrator zip(File zipFile, FileIntegratorInternal closer) {
         //noinspection ResultOfMethodCallIgnored
         zipFile.getParentFile().mkdirs();
@@ -0,0 +1,128 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.noproxy.gradle.test.internal;
+
+import com.google.common.io.BaseEncoding;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The {@code .md5}, {@code .sha1}, {@code .sha256} and {@code .sha512} files of a maven repository, all digests of a
+ * file are computed by reading it once.
+ */
+final class MavenChecksums {
+    static final String MD5 = "md5";
+    static final String SHA1 = "sha1";
+    static final String SHA256 = "sha256";
+    static final String SHA512 = "sha512";
+    private static final Map<String, String> ALGORITHMS = new LinkedHashMap<>();
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    static {
+        ALGORITHMS.put(MD5, "MD5");
+        ALGORITHMS.put(SHA1, "SHA-1");
+        ALGORITHMS.put(SHA256, "SHA-256");
+        ALGORITHMS.put(SHA512, "SHA-512");
+    }
+
+    private MavenChecksums() {
+    }
+
+    static boolean isChecksum(File file) {
+        final String name = file.getName();
+        return ALGORITHMS.keySet().stream().anyMatch(extension -> name.endsWith("." + extension));
+    }
+
+    /**
+     * @return the hex digests by checksum extension
+     */
+    static Map<String, String> digest(File file) {
+        final Map<String, MessageDigest> digests = new LinkedHashMap<>();
+        try {
+            for (Map.Entry<String, String> algorithm : ALGORITHMS.entrySet()) {
+                digests.put(algorithm.getKey(), MessageDigest.getInstance(algorithm.getValue()));
+            }
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+
+        final byte[] buffer = new byte[BUFFER_SIZE];
+        try (InputStream input = Files.newInputStream(file.toPath())) {
+            int read;
+            while ((read = input.read(buffer)) != -1) {
+                for (MessageDigest digest : digests.values()) {
+                    digest.update(buffer, 0, read);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        final Map<String, String> hex = new LinkedHashMap<>();
+        digests.forEach((extension, digest) -> hex.put(extension, BaseEncoding.base16().lowerCase().encode(digest.digest())));
+        return hex;
+    }
+
+    static Map<String, String> digest(byte[] content) {
+        final Map<String, String> hex = new LinkedHashMap<>();
+        try {
+            for (Map.Entry<String, String> algorithm : ALGORITHMS.entrySet()) {
+                hex.put(algorithm.getKey(), BaseEncoding.base16().lowerCase()
+                        .encode(MessageDigest.getInstance(algorithm.getValue()).digest(content)));
+            }
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        return hex;
+    }
+
+    static void write(File file, Map<String, String> digest) {
+        digest.forEach((extension, value) -> {
+            try {
+                Files.write(new File(file.getPath() + "." + extension).toPath(), value.getBytes(StandardCharsets.US_ASCII));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    /**
+     * Write the checksum files of all the files in parallel.
+     *
+     * @return the digests of every file
+     */
+    static Map<File, Map<String, String>> write(Collection<File> files) {
+        final Map<File, Map<String, String>> digests = new ConcurrentHashMap<>();
+        files.parallelStream().forEach(file -> {
+            final Map<String, String> digest = digest(file);
+            write(file, digest);
+            digests.put(file, digest);
+        });
+        return digests;
+    }
+}
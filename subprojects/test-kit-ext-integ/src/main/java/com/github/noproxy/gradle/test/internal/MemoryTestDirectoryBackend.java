@@ -0,0 +1,108 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.noproxy.gradle.test.internal;
+
+import com.google.common.hash.Hashing;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Creates test directories on a memory backed filesystem, under a directory named after the hash of the original
+ * root, so roots of different projects and workers stay apart. Falls back to the disk when there is no such
+ * filesystem or it is not writable.
+ * <p>
+ * Memory is scarce, so when the JVM shuts down, once the pending background deletions are done, the empty directories
+ * left under the roots used by this JVM are removed, the roots themselves included. Directories kept for a failed
+ * test stay, with their parents.
+ */
+class MemoryTestDirectoryBackend extends DiskTestDirectoryBackend {
+    static final String NAME = "memory";
+    static final MemoryTestDirectoryBackend SHARED = new MemoryTestDirectoryBackend(
+            new File(System.getProperty("noproxy.testdir.memoryRoot", "/dev/shm")));
+    private final File memoryRoot;
+    private final boolean available;
+    private final Set<File> usedRoots = ConcurrentHashMap.newKeySet();
+
+    MemoryTestDirectoryBackend(File memoryRoot) {
+        this.memoryRoot = new File(memoryRoot, "noproxy-testfiles-" + System.getProperty("user.name", "user"));
+        this.available = memoryRoot.isDirectory() && Files.isWritable(memoryRoot.toPath());
+        if (available) {
+            Runtime.getRuntime().addShutdownHook(new Thread(this::removeEmptyRoots, "memory-test-dir-cleanup"));
+        }
+    }
+
+    private static void removeEmptyDirectories(File root) throws IOException {
+        if (!root.isDirectory()) {
+            return;
+        }
+        final List<Path> dirs;
+        try (Stream<Path> walk = Files.walk(root.toPath())) {
+            // children first
+            dirs = walk.filter(Files::isDirectory).sorted(Comparator.reverseOrder()).collect(Collectors.toList());
+        }
+        for (Path dir : dirs) {
+            final String[] children = dir.toFile().list();
+            if (children != null && children.length == 0) {
+                Files.deleteIfExists(dir);
+            }
+        }
+    }
+
+    void removeEmptyRoots() {
+        BackgroundDeleter.shared().drain();
+        for (File root : usedRoots) {
+            try {
+                removeEmptyDirectories(root);
+            } catch (IOException e) {
+                // nothing left to fail, the root is reused by the next run of the same project
+                System.err.println("Couldn't remove memory test root " + root);
+                e.printStackTrace(System.err);
+            }
+        }
+        final String[] roots = memoryRoot.list();
+        if (roots != null && roots.length == 0) {
+            memoryRoot.delete();
+        }
+    }
+
+    @Override
+    public String getName() {
+        return available ? NAME : NAME + "(disk)";
+    }
+
+    @Override
+    protected File rootOf(File root) {
+        if (!available) {
+            return root;
+        }
+        final String rootHash = Hashing.sha256()
+                .hashString(root.getAbsolutePath(), StandardCharsets.UTF_8).toString().substring(0, 16);
+        final File memory = new File(memoryRoot, rootHash);
+        usedRoots.add(memory);
+        return memory;
+    }
+}
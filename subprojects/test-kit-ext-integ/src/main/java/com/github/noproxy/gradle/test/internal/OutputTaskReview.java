@@ -19,7 +19,10 @@ package com.github.noproxy.gradle.test.internal;
 import com.github.noproxy.gradle.test.api.BuildRunner;
 import com.github.noproxy.gradle.test.api.TaskReview;
 
-//TODO use better implementation because broken when '--quiet'
+/**
+ * @deprecated broken when '--quiet', use {@link TaskOutcomeReview}
+ */
+@Deprecated
 public class OutputTaskReview implements TaskReview {
     private static final String TASK_UP_TO_DATE = "UP-TO-DATE";
     private static final String TASK_FROM_CACHE = "FROM-CACHE";
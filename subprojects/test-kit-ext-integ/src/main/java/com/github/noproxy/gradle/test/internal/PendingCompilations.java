@@ -0,0 +1,183 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.noproxy.gradle.test.internal;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Collects the jars waiting to be compiled in an integrator tree, the first jar closed compiles all of them.
+ * <p>
+ * Every jar is compiled by its own javac task against its own sources, stub classes and options only, so whether a
+ * jar compiles and what its classes contain never depends on the other pending jars. The tasks run on a pool of
+ * {@code noproxy.javac.parallelism} threads, the number of processors by default.
+ * <p>
+ * Jars found in the {@link CompiledClassCache} are not compiled at all.
+ */
+class PendingCompilations {
+    private static final String PARALLELISM_PROPERTY = "noproxy.javac.parallelism";
+    private final Map<DefaultJarIntegrator, Boolean> pending = new LinkedHashMap<>();
+    private final Map<DefaultJarIntegrator, Map<String, byte[]>> compiled = new HashMap<>();
+    private final Map<DefaultJarIntegrator, RuntimeException> failures = new HashMap<>();
+
+    /**
+     * Register a jar which has sources, registering it again after it was compiled discards the result.
+     */
+    synchronized void register(DefaultJarIntegrator jar) {
+        compiled.remove(jar);
+        failures.remove(jar);
+        pending.put(jar, Boolean.TRUE);
+    }
+
+    /**
+     * @return the bytes of the classes of the jar by binary class name
+     */
+    synchronized Map<String, byte[]> classesOf(DefaultJarIntegrator jar) {
+        if (pending.containsKey(jar)) {
+            compileAll();
+        }
+        final RuntimeException failure = failures.remove(jar);
+        if (failure != null) {
+            throw failure;
+        }
+        final Map<String, byte[]> classes = compiled.remove(jar);
+        if (classes == null) {
+            throw new IllegalStateException("no sources registered for " + jar.getDestZipFile());
+        }
+        return classes;
+    }
+
+    private void compileAll() {
+        final CompiledClassCache cache = CompiledClassCache.shared();
+        final Map<DefaultJarIntegrator, String> keys = new HashMap<>();
+        final List<DefaultJarIntegrator> misses = new ArrayList<>();
+        for (DefaultJarIntegrator jar : pending.keySet()) {
+            if (cache.isEnabled()) {
+                final String key = cache.keyOf(jar.getSources(), jar.getStubClasses(), jar.getOptions());
+                final Map<String, byte[]> classes = cache.get(key);
+                if (classes != null) {
+                    compiled.put(jar, classes);
+                    continue;
+                }
+                keys.put(jar, key);
+            }
+            misses.add(jar);
+        }
+        pending.clear();
+        if (misses.isEmpty()) {
+            return;
+        }
+
+        final int parallelism = Math.max(1, Math.min(misses.size(),
+                Integer.getInteger(PARALLELISM_PROPERTY, Runtime.getRuntime().availableProcessors())));
+        final ExecutorService executor = Executors.newFixedThreadPool(parallelism, runnable -> {
+            final Thread thread = new Thread(runnable, "fixture-javac");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            // workers only compile, results are recorded by this thread which holds the lock
+            final Map<DefaultJarIntegrator, Future<Object>> futures = new LinkedHashMap<>();
+            for (DefaultJarIntegrator jar : misses) {
+                futures.put(jar, executor.submit(() -> compile(jar)));
+            }
+            for (Map.Entry<DefaultJarIntegrator, Future<Object>> future : futures.entrySet()) {
+                final DefaultJarIntegrator jar = future.getKey();
+                final Object result = future.getValue().get();
+                if (result instanceof RuntimeException) {
+                    failures.put(jar, (RuntimeException) result);
+                } else {
+                    final Compiled classes = (Compiled) result;
+                    compiled.put(jar, classes.classes);
+                    if (keys.containsKey(jar)) {
+                        cache.put(keys.get(jar), classes.classes, classes.classpathInputs);
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while compiling jars", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("failed to compile jars", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Compile the sources of the jar in memory by a javac task of its own.
+     *
+     * @return the compiled classes, or the failure
+     */
+    private static Object compile(DefaultJarIntegrator jar) {
+        final JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        final DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+        final StandardJavaFileManager standardFileManager =
+                compiler.getStandardFileManager(diagnostics, null, StandardCharsets.UTF_8);
+
+        final List<JavaFileObject> compilationUnits = new ArrayList<>();
+        jar.getSources().forEach((className, source) ->
+                compilationUnits.add(InMemoryJavaFileManager.source(jar, className, source)));
+        try (InMemoryJavaFileManager fileManager = new InMemoryJavaFileManager(standardFileManager)) {
+            fileManager.addClasspathClasses(jar.getStubClasses());
+            final boolean success = compiler.getTask(null, fileManager, diagnostics, jar.getOptions(),
+                    null, compilationUnits).call();
+            if (!success) {
+                final StringBuilder errors = new StringBuilder();
+                for (Diagnostic<? extends JavaFileObject> diagnostic : diagnostics.getDiagnostics()) {
+                    final String source = diagnostic.getSource() == null ? "" : diagnostic.getSource().getName();
+                    errors.append(String.format("%s:%d%n %s%n", source, diagnostic.getLineNumber(),
+                            diagnostic.getMessage(Locale.US)));
+                }
+                return new RuntimeException("failed to compile classes " + jar.getSources().keySet()
+                        + " of " + jar.getDestZipFile() + "\n" + errors);
+            }
+            return new Compiled(fileManager.getClasses(jar), fileManager.getClasspathInputs());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static class Compiled {
+        private final Map<String, byte[]> classes;
+        private final Set<File> classpathInputs;
+
+        Compiled(Map<String, byte[]> classes, Set<File> classpathInputs) {
+            this.classes = classes;
+            this.classpathInputs = classpathInputs;
+        }
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.noproxy.gradle.test.internal;
+
+import org.apache.commons.io.FileUtils;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
+
+/**
+ * Hands out empty directories created ahead under {@code <root>/pool}, {@code noproxy.testdir.poolSize} of them per
+ * root, 8 by default. A deleted directory is emptied in place by the {@link BackgroundDeleter} and goes back to the
+ * pool once empty, so the directories themselves are reused. Pooled directories are not named after the tests.
+ */
+class PooledTestDirectoryBackend implements TestDirectoryBackend {
+    static final String NAME = "pooled";
+    static final PooledTestDirectoryBackend SHARED = new PooledTestDirectoryBackend(
+            Integer.getInteger("noproxy.testdir.poolSize", 8));
+    private static final String POOL_DIR = "pool";
+    private final int poolSize;
+    private final Map<File, Queue<File>> pools = new ConcurrentHashMap<>();
+    private final Map<File, Queue<File>> poolOfDir = new ConcurrentHashMap<>();
+
+    PooledTestDirectoryBackend(int poolSize) {
+        this.poolSize = poolSize;
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public File create(File root, String prefix) {
+        final File poolRoot = DiskTestDirectoryBackend.join(root, POOL_DIR);
+        final Queue<File> pool = pools.computeIfAbsent(poolRoot, key -> {
+            final Queue<File> created = new ConcurrentLinkedQueue<>();
+            for (int i = 0; i < poolSize; i++) {
+                created.add(DiskTestDirectoryBackend.SHARED.create(key, ""));
+            }
+            return created;
+        });
+
+        File dir = pool.poll();
+        if (dir == null) {
+            dir = DiskTestDirectoryBackend.SHARED.create(poolRoot, "");
+        }
+        poolOfDir.put(dir, pool);
+        return dir;
+    }
+
+    @Override
+    public void delete(File root, File dir, @Nullable Consumer<File> beforeDelete, @Nullable LongConsumer deleted)
+            throws IOException {
+        final Queue<File> pool = poolOfDir.remove(dir);
+        if (pool == null) {
+            if (beforeDelete != null) {
+                beforeDelete.accept(dir);
+            }
+            FileUtils.forceDelete(dir);
+            return;
+        }
+        // a directory that cannot be emptied is left out of the pool, which creates a new one when it runs dry
+        BackgroundDeleter.shared().clean(dir, beforeDelete, deleted, () -> pool.add(dir));
+    }
+}
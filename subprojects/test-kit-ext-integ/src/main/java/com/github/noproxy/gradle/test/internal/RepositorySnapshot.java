@@ -0,0 +1,288 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.noproxy.gradle.test.internal;
+
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * A Merkle tree of a directory, usually a published maven repository: every file is hashed by its content, every
+ * directory by the names and hashes of its children, so two snapshots are compared by walking down the differing
+ * directories only.
+ * <p>
+ * Paths are relative with {@code /} separators, directories end with {@code /}, the root is the empty path. Files
+ * matching an ignore glob are left out.
+ * <p>
+ * Only reproducible content is hashed: archives such as jars and aars by the names and content of their entries,
+ * not their bytes which carry the time they were written at; {@code maven-metadata.xml} without its timestamp and
+ * Gradle module metadata without its build id and the sizes and digests of the artifacts. The checksum files are
+ * derived from the bytes, so they are ignored by default.
+ */
+public class RepositorySnapshot {
+    public static final List<String> DEFAULT_IGNORES = Collections.unmodifiableList(Arrays.asList(
+            "**.md5", "**.sha1", "**.sha256", "**.sha512"));
+    private static final Pattern LAST_UPDATED = Pattern.compile("<lastUpdated>[^<]*</lastUpdated>");
+    private static final Pattern BUILD_ID = Pattern.compile("\\s*\"buildId\"\\s*:\\s*\"[^\"]*\",?");
+    private static final Pattern FILE_DIGESTS = Pattern.compile("\\s*\"(size|md5|sha1|sha256|sha512)\"\\s*:\\s*(\"[^\"]*\"|\\d+),?");
+    private static final List<String> ARCHIVE_EXTENSIONS = Collections.unmodifiableList(Arrays.asList(
+            ".jar", ".aar", ".zip", ".war", ".apk"));
+    private static final String UPDATE_PROPERTY = "noproxy.snapshot.update";
+    private static final String ROOT = "";
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private final SortedMap<String, String> hashes;
+    private final SortedMap<String, SortedSet<String>> children = new TreeMap<>();
+
+    /**
+     * @param fileHashes the hashes of the files, the directories are hashed from them
+     */
+    private RepositorySnapshot(Map<String, String> fileHashes) {
+        this.hashes = new TreeMap<>(fileHashes);
+        children.put(ROOT, new TreeSet<>());
+        for (String file : fileHashes.keySet()) {
+            String child = file;
+            while (!child.isEmpty()) {
+                final String parent = parentOf(child);
+                final boolean known = children.containsKey(parent);
+                children.computeIfAbsent(parent, key -> new TreeSet<>()).add(child);
+                if (known) {
+                    break;
+                }
+                child = parent;
+            }
+        }
+
+        // the deepest directories first, their paths are the longest
+        final List<String> directories = new ArrayList<>(children.keySet());
+        directories.sort((a, b) -> Integer.compare(b.length(), a.length()));
+        for (String directory : directories) {
+            final Hasher hasher = Hashing.sha256().newHasher();
+            for (String child : children.get(directory)) {
+                hasher.putString(child, StandardCharsets.UTF_8).putByte((byte) 0)
+                        .putString(hashes.get(child), StandardCharsets.UTF_8).putByte((byte) '\n');
+            }
+            hashes.put(directory, hasher.hash().toString());
+        }
+    }
+
+    /**
+     * Hash the files of the directory in parallel.
+     */
+    public static RepositorySnapshot of(File root, List<String> ignores) {
+        final Path rootPath = root.toPath();
+        final List<PathMatcher> matchers = ignores.stream()
+                .map(glob -> FileSystems.getDefault().getPathMatcher("glob:" + glob))
+                .collect(Collectors.toList());
+        final List<Path> files;
+        try (Stream<Path> walk = Files.walk(rootPath)) {
+            files = walk.filter(Files::isRegularFile)
+                    .filter(file -> matchers.stream().noneMatch(matcher -> matcher.matches(rootPath.relativize(file))))
+                    .collect(Collectors.toList());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        final Map<String, String> fileHashes = files.parallelStream().collect(Collectors.toConcurrentMap(
+                file -> rootPath.relativize(file).toString().replace(File.separatorChar, '/'),
+                RepositorySnapshot::hashContent));
+        return new RepositorySnapshot(fileHashes);
+    }
+
+    /**
+     * Read a snapshot written by {@link #write(File)}.
+     */
+    public static RepositorySnapshot read(File file) {
+        final Map<String, String> fileHashes = new TreeMap<>();
+        try {
+            for (String line : Files.readAllLines(file.toPath(), StandardCharsets.UTF_8)) {
+                final int space = line.indexOf(' ');
+                if (space > 0 && !line.endsWith("/")) {
+                    fileHashes.put(line.substring(space + 1), line.substring(0, space));
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return new RepositorySnapshot(fileHashes);
+    }
+
+    private static String hashContent(Path file) {
+        try {
+            final String name = file.getFileName().toString();
+            if (name.startsWith("maven-metadata") && name.endsWith(".xml")) {
+                final String text = new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+                return Hashing.sha256().hashString(LAST_UPDATED.matcher(text).replaceAll(""), StandardCharsets.UTF_8).toString();
+            }
+            if (name.endsWith(".module")) {
+                final String text = new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+                final String normalized = FILE_DIGESTS.matcher(BUILD_ID.matcher(text).replaceAll("")).replaceAll("");
+                return Hashing.sha256().hashString(normalized, StandardCharsets.UTF_8).toString();
+            }
+            if (ARCHIVE_EXTENSIONS.stream().anyMatch(name::endsWith)) {
+                return hashArchive(file);
+            }
+            try (InputStream input = Files.newInputStream(file)) {
+                return hash(input);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static String hashArchive(Path file) throws IOException {
+        final SortedMap<String, String> entries = new TreeMap<>();
+        try (ZipInputStream zip = new ZipInputStream(new BufferedInputStream(Files.newInputStream(file), BUFFER_SIZE))) {
+            ZipEntry entry;
+            while ((entry = zip.getNextEntry()) != null) {
+                entries.put(entry.getName(), entry.isDirectory() ? "" : hash(zip));
+            }
+        }
+        final Hasher hasher = Hashing.sha256().newHasher();
+        entries.forEach((name, hash) -> hasher.putString(name, StandardCharsets.UTF_8).putByte((byte) 0)
+                .putString(hash, StandardCharsets.UTF_8).putByte((byte) '\n'));
+        return hasher.hash().toString();
+    }
+
+    private static String hash(InputStream input) throws IOException {
+        final Hasher hasher = Hashing.sha256().newHasher();
+        final byte[] buffer = new byte[BUFFER_SIZE];
+        int read;
+        while ((read = input.read(buffer)) != -1) {
+            hasher.putBytes(buffer, 0, read);
+        }
+        return hasher.hash().toString();
+    }
+
+    private static String parentOf(String path) {
+        final String trimmed = path.endsWith("/") ? path.substring(0, path.length() - 1) : path;
+        final int slash = trimmed.lastIndexOf('/');
+        return slash < 0 ? ROOT : trimmed.substring(0, slash + 1);
+    }
+
+    public String getRootHash() {
+        return hashes.get(ROOT);
+    }
+
+    /**
+     * @return the hash of the file or directory, or null when it is not in the snapshot
+     */
+    @Nullable
+    public String getHash(String path) {
+        return hashes.get(path);
+    }
+
+    /**
+     * @return the direct children of the directory, like {@code com/example/} for the root
+     */
+    public List<String> children(String directory) {
+        final SortedSet<String> directChildren = children.get(directory);
+        return directChildren == null ? Collections.emptyList() : new ArrayList<>(directChildren);
+    }
+
+    /**
+     * Write every file with its hash, one per line, directories are hashed again when read.
+     */
+    public void write(File file) {
+        final StringBuilder text = new StringBuilder();
+        hashes.forEach((path, hash) -> {
+            if (!path.isEmpty() && !path.endsWith("/")) {
+                text.append(hash).append(' ').append(path).append('\n');
+            }
+        });
+        Actions.execute(file, Actions.setText(text.toString()));
+    }
+
+    /**
+     * Fail with the differing subtrees when this snapshot differs from the golden one, or when there is no golden
+     * snapshot. The golden snapshot is written instead when system property {@code noproxy.snapshot.update} is set.
+     */
+    public void assertMatches(File golden) {
+        if (Boolean.getBoolean(UPDATE_PROPERTY)) {
+            write(golden);
+            return;
+        }
+        if (!golden.isFile()) {
+            throw new AssertionError("The snapshot " + golden + " does not exist, rerun with " + UPDATE_PROPERTY
+                    + "=true to write it");
+        }
+        final List<String> differences = diff(read(golden));
+        if (!differences.isEmpty()) {
+            throw new AssertionError("The repository differs from the snapshot " + golden + ", rerun with "
+                    + UPDATE_PROPERTY + "=true to accept the changes:\n" + String.join("\n", differences));
+        }
+    }
+
+    /**
+     * Compare with an expected snapshot, only descending into the directories whose hash differ.
+     *
+     * @return the differing subtrees, like {@code changed com/example/lib/1.0/lib-1.0.pom} or
+     * {@code added com/example/other/}, empty when both are the same
+     */
+    public List<String> diff(RepositorySnapshot expected) {
+        final List<String> differences = new ArrayList<>();
+        diff(expected, ROOT, differences);
+        return differences;
+    }
+
+    private void diff(RepositorySnapshot expected, String directory, List<String> differences) {
+        if (hashes.get(directory).equals(expected.hashes.get(directory))) {
+            return;
+        }
+        final SortedSet<String> all = new TreeSet<>(children(directory));
+        all.addAll(expected.children(directory));
+        for (String child : all) {
+            final String actualHash = hashes.get(child);
+            final String expectedHash = expected.hashes.get(child);
+            if (expectedHash == null) {
+                differences.add("added " + child);
+            } else if (actualHash == null) {
+                differences.add("removed " + child);
+            } else if (!actualHash.equals(expectedHash)) {
+                if (child.endsWith("/")) {
+                    diff(expected, child, differences);
+                } else {
+                    differences.add("changed " + child);
+                }
+            }
+        }
+    }
+}
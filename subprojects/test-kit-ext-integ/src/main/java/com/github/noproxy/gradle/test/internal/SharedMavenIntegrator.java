@@ -0,0 +1,284 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.noproxy.gradle.test.internal;
+
+import com.github.noproxy.gradle.test.api.*;
+import com.google.common.hash.Hashing;
+import groovy.lang.Closure;
+import groovy.lang.DelegatesTo;
+import org.apache.commons.io.FileUtils;
+import org.gradle.api.Action;
+import org.gradle.internal.impldep.org.apache.maven.artifact.versioning.ComparableVersion;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * A maven repository shared by all specifications and test runs, {@code build/tmp/shared-maven} or system property
+ * {@code noproxy.maven.sharedDir}, until the build directory is cleaned.
+ * <p>
+ * A module is generated once: its key is made of declared inputs only, the coordinates, the kind of module and the
+ * options, or the settings of a generated graph. A module already published with the same key is skipped without
+ * running its generator, so the coordinates must identify the content: publish another content under another
+ * version. Publishing the same coordinates with another key fails, replacing the module would change it under the
+ * builds of other workers resolving it. Modules are generated in a staging directory then moved in place, under an
+ * in-process lock and a file lock per artifact shared by concurrent test workers, and the new version is merged
+ * into the existing {@code maven-metadata.xml}.
+ * <p>
+ * Modules are published as soon as they are declared, closing does nothing.
+ */
+public class SharedMavenIntegrator implements MavenIntegrator {
+    private static final File ROOT = new File(System.getProperty("noproxy.maven.sharedDir", "build/tmp/shared-maven")).getAbsoluteFile();
+    private static final String MARKER = ".shared-module";
+    private static final Pattern VERSION = Pattern.compile("<version>([^<]+)</version>");
+    private static final Map<String, ReentrantLock> LOCKS = new ConcurrentHashMap<>();
+    private boolean checksums = Boolean.parseBoolean(System.getProperty("noproxy.maven.checksums", "true"));
+    private boolean gradleMetadata = Boolean.getBoolean("noproxy.maven.gradleMetadata");
+
+    public static File getRepositoryDir() {
+        return new File(ROOT, "repository");
+    }
+
+    private static File lockFile(String group, String artifact) {
+        return new File(ROOT, "locks/" + group + "/" + artifact + ".lock");
+    }
+
+    private static File moduleDir(String group, String artifact) {
+        return new File(getRepositoryDir(), FileIntegrator.join(group.replace('.', File.separatorChar), artifact));
+    }
+
+    private static boolean isVersionDir(File dir) {
+        return new File(dir, dir.getParentFile().getName() + "-" + dir.getName() + ".pom").isFile();
+    }
+
+    @Nullable
+    private static String readMarker(File versionDir) throws IOException {
+        final File marker = new File(versionDir, MARKER);
+        return marker.isFile() ? new String(Files.readAllBytes(marker.toPath()), StandardCharsets.UTF_8) : null;
+    }
+
+    private static void mergeMetadata(String group, String artifact, String version, boolean checksums) throws IOException {
+        final File metadata = new File(moduleDir(group, artifact), "maven-metadata.xml");
+        final TreeSet<String> versions = new TreeSet<>(Comparator.comparing(ComparableVersion::new));
+        if (metadata.isFile()) {
+            final Matcher matcher = VERSION.matcher(new String(Files.readAllBytes(metadata.toPath()), StandardCharsets.UTF_8));
+            while (matcher.find()) {
+                versions.add(matcher.group(1));
+            }
+        }
+        if (!versions.add(version) && metadata.isFile()) {
+            return;
+        }
+        final String text = DefaultMavenIntegrator.mavenMetaData(group, artifact, versions, versions.last());
+        // replaced atomically, resolution in other workers may be reading it
+        final File temp = new File(metadata.getPath() + "." + UUID.randomUUID());
+        Files.write(temp.toPath(), text.getBytes(StandardCharsets.UTF_8));
+        Files.move(temp.toPath(), metadata.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        if (checksums) {
+            MavenChecksums.write(metadata, MavenChecksums.digest(metadata));
+        }
+    }
+
+    @Override
+    public void setChecksums(boolean checksums) {
+        this.checksums = checksums;
+    }
+
+    @Override
+    public void setGradleMetadata(boolean gradleMetadata) {
+        this.gradleMetadata = gradleMetadata;
+    }
+
+    private static IllegalStateException conflict(String group, String artifact, String version, String published) {
+        return new IllegalStateException(String.format("%s:%s:%s is already in the shared maven repository %s "
+                + "as '%s', use another version", group, artifact, version, getRepositoryDir(), published));
+    }
+
+    private String keyOf(String... inputs) {
+        return String.join(":", inputs) + ":" + checksums + ":" + gradleMetadata;
+    }
+
+    private void publish(String group, String artifact, String version, String kind, Consumer<MavenIntegrator> generator) {
+        final String key = keyOf(group, artifact, version, kind);
+        final File versionDir = new File(moduleDir(group, artifact), version);
+        try {
+            final String published = readMarker(versionDir);
+            if (key.equals(published)) {
+                return;
+            }
+            if (published != null) {
+                throw conflict(group, artifact, version, published);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        publish(key, generator);
+    }
+
+    /**
+     * Generate the modules in a staging repository, then install every module which is not published yet.
+     */
+    private void publish(String key, Consumer<MavenIntegrator> generator) {
+        final File staging = new File(ROOT, "staging/" + UUID.randomUUID());
+        try {
+            Actions.mkdirs().execute(staging);
+            final DefaultFileIntegrator stagingRoot = new DefaultFileIntegrator(staging);
+            final DefaultMavenIntegrator maven = new DefaultMavenIntegrator(stagingRoot);
+            maven.setChecksums(checksums);
+            maven.setGradleMetadata(gradleMetadata);
+            generator.accept(maven);
+            // like the maven defaults, the artifacts are written before the metadata
+            stagingRoot.close();
+            maven.close();
+
+            final List<File> versionDirs;
+            try (Stream<Path> walk = Files.walk(staging.toPath())) {
+                versionDirs = walk.map(Path::toFile).filter(SharedMavenIntegrator::isVersionDir).collect(Collectors.toList());
+            }
+            for (File versionDir : versionDirs) {
+                install(staging, versionDir, key);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not publish to the shared maven repository " + getRepositoryDir(), e);
+        } finally {
+            FileUtils.deleteQuietly(staging);
+        }
+    }
+
+    private void install(File staging, File stagedVersionDir, String key) throws IOException {
+        final String version = stagedVersionDir.getName();
+        final File artifactDir = stagedVersionDir.getParentFile();
+        final String artifact = artifactDir.getName();
+        final String group = staging.toPath().relativize(artifactDir.getParentFile().toPath()).toString()
+                .replace(File.separatorChar, '.');
+        final File versionDir = new File(moduleDir(group, artifact), version);
+
+        final ReentrantLock lock = LOCKS.computeIfAbsent(group + ":" + artifact, coordinates -> new ReentrantLock());
+        lock.lock();
+        try {
+            final File lockFile = lockFile(group, artifact);
+            Files.createDirectories(lockFile.getParentFile().toPath());
+            try (FileChannel channel = FileChannel.open(lockFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+                 FileLock ignored = channel.lock()) {
+                final String published = readMarker(versionDir);
+                if (key.equals(published)) {
+                    return;
+                }
+                if (published != null) {
+                    throw conflict(group, artifact, version, published);
+                }
+                Actions.execute(new File(stagedVersionDir, MARKER), Actions.setText(key));
+                // left over by a killed worker
+                FileUtils.deleteDirectory(versionDir);
+                Files.createDirectories(versionDir.getParentFile().toPath());
+                Files.move(stagedVersionDir.toPath(), versionDir.toPath(), StandardCopyOption.ATOMIC_MOVE);
+                mergeMetadata(group, artifact, version, checksums);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void javaModule(String group, String artifact, String version, Action<JarIntegrator> action) {
+        publish(group, artifact, version, "jar", maven -> maven.javaModule(group, artifact, version, action));
+    }
+
+    @Override
+    public void androidModule(String group, String artifact, String version, Action<AarIntegrator> action) {
+        publish(group, artifact, version, "aar", maven -> maven.androidModule(group, artifact, version, action));
+    }
+
+    @Override
+    public void archiveModule(String group, String artifact, String version, String packaging, Action<ZipIntegrator> action) {
+        publish(group, artifact, version, "archive-" + packaging, maven -> maven.archiveModule(group, artifact, version, packaging, action));
+    }
+
+    @Override
+    public void module(String group, String artifact, String version, String packaging, Action<ModuleIntegrator> action) {
+        publish(group, artifact, version, "module-" + packaging, maven -> maven.module(group, artifact, version, packaging, action));
+    }
+
+    @Override
+    public void javaModule(String group, String artifact, String version,
+                           @DelegatesTo(value = JarIntegrator.class, strategy = Closure.DELEGATE_FIRST) Closure closure) {
+        publish(group, artifact, version, "jar", maven -> maven.javaModule(group, artifact, version, Actions.of(closure)));
+    }
+
+    @Override
+    public void androidModule(String group, String artifact, String version,
+                              @DelegatesTo(value = AarIntegrator.class, strategy = Closure.DELEGATE_FIRST) Closure closure) {
+        publish(group, artifact, version, "aar", maven -> maven.androidModule(group, artifact, version, Actions.of(closure)));
+    }
+
+    @Override
+    public void archiveModule(String group, String artifact, String version, String packaging,
+                              @DelegatesTo(value = ZipIntegrator.class, strategy = Closure.DELEGATE_FIRST) Closure closure) {
+        publish(group, artifact, version, "archive-" + packaging, maven -> maven.archiveModule(group, artifact, version, packaging, Actions.of(closure)));
+    }
+
+    @Override
+    public void module(String group, String artifact, String version, String packaging,
+                       @DelegatesTo(value = ModuleIntegrator.class, strategy = Closure.DELEGATE_FIRST) Closure closure) {
+        publish(group, artifact, version, "module-" + packaging, maven -> maven.module(group, artifact, version, packaging, Actions.of(closure)));
+    }
+
+    @Override
+    public void generateModules(@DelegatesTo(value = DependencyGraph.class,
+            strategy = Closure.DELEGATE_FIRST) Closure graphConfigure) {
+        generateModules(Actions.of(graphConfigure));
+    }
+
+    @Override
+    public void generateModules(Action<? super DependencyGraph> graphConfigure) {
+        final DefaultDependencyGraph graph = new DefaultDependencyGraph();
+        graphConfigure.execute(graph);
+        final String key = keyOf("graph", graph.getKey());
+        final File published = new File(ROOT, "graphs/" + Hashing.sha256().hashString(key, StandardCharsets.UTF_8) + ".published");
+        if (published.isFile()) {
+            return;
+        }
+        publish(key, maven -> maven.generateModules(graphConfigure));
+        Actions.execute(published, Actions.setText(key));
+    }
+
+    @Override
+    public void close() {
+        // modules are published when declared
+    }
+}
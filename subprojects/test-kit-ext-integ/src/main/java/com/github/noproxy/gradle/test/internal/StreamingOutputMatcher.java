@@ -0,0 +1,68 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.noproxy.gradle.test.internal;
+
+import com.github.noproxy.gradle.test.api.OutputMatcher;
+
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+
+class StreamingOutputMatcher implements OutputMatcher, BuildOutputSink.LineListener {
+    private final String description;
+    private final Predicate<String> predicate;
+    private volatile int matchCount;
+
+    StreamingOutputMatcher(String description, Predicate<String> predicate) {
+        this.description = description;
+        this.predicate = predicate;
+    }
+
+    static StreamingOutputMatcher contains(String text) {
+        return new StreamingOutputMatcher("output contains '" + text + "'", line -> line.contains(text));
+    }
+
+    static StreamingOutputMatcher matches(String regex) {
+        final Pattern pattern = Pattern.compile(regex);
+        return new StreamingOutputMatcher("output matches /" + regex + "/", line -> pattern.matcher(line).find());
+    }
+
+    void reset() {
+        matchCount = 0;
+    }
+
+    @Override
+    public synchronized void onLine(String line) {
+        if (predicate.test(line)) {
+            matchCount++;
+        }
+    }
+
+    @Override
+    public boolean isMatched() {
+        return matchCount > 0;
+    }
+
+    @Override
+    public int getMatchCount() {
+        return matchCount;
+    }
+
+    @Override
+    public String toString() {
+        return description + " (" + matchCount + " matches)";
+    }
+}
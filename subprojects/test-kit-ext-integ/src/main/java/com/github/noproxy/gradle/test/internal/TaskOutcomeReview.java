@@ -0,0 +1,124 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.noproxy.gradle.test.internal;
+
+import com.github.noproxy.gradle.test.api.BuildRunner;
+import com.github.noproxy.gradle.test.api.TaskReview;
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.ListMultimap;
+import org.gradle.testkit.runner.BuildTask;
+import org.gradle.testkit.runner.TaskOutcome;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A {@link TaskReview} backed by the task outcomes TestKit reports, so it works with any log level.
+ * <p>
+ * The outcomes of a build are indexed once, by path and by every path suffix, so each query is a map lookup.
+ * A task starting with ':' is an exact path, for example ':build' matches ':build' but not ':app:build';
+ * otherwise it is a suffix, for example 'build' matches both ':build' and ':app:build'.
+ */
+public class TaskOutcomeReview implements TaskReview {
+    private final BuildRunner runner;
+    private final Map<String, TaskOutcome> outcomesByPath = new HashMap<>();
+    private final ListMultimap<String, TaskOutcome> outcomesBySuffix = ArrayListMultimap.create();
+    @Nullable
+    private List<BuildTask> indexedTasks;
+
+    public TaskOutcomeReview(BuildRunner runner) {
+        this.runner = runner;
+    }
+
+    private void index() {
+        final List<BuildTask> tasks = runner.getBuildTasks();
+        if (tasks == null) {
+            throw new IllegalStateException("no build has been run yet");
+        }
+        if (tasks == indexedTasks) {
+            return;
+        }
+
+        outcomesByPath.clear();
+        outcomesBySuffix.clear();
+        for (BuildTask task : tasks) {
+            final String path = task.getPath();
+            outcomesByPath.put(path, task.getOutcome());
+            for (int colon = path.indexOf(':'); colon >= 0; colon = path.indexOf(':', colon + 1)) {
+                outcomesBySuffix.put(path.substring(colon + 1), task.getOutcome());
+            }
+        }
+        indexedTasks = tasks;
+    }
+
+    private Collection<TaskOutcome> outcomesOf(String task) {
+        index();
+        if (task.startsWith(":")) {
+            final TaskOutcome outcome = outcomesByPath.get(task);
+            return outcome == null ? Collections.emptyList() : Collections.singletonList(outcome);
+        }
+        return outcomesBySuffix.get(task);
+    }
+
+    private boolean anyOutcomeIn(String task, TaskOutcome... expected) {
+        for (TaskOutcome outcome : outcomesOf(task)) {
+            for (TaskOutcome candidate : expected) {
+                if (outcome == candidate) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public boolean taskUpToDate(String task) {
+        return anyOutcomeIn(task, TaskOutcome.UP_TO_DATE);
+    }
+
+    @Override
+    public boolean taskFromCached(String task) {
+        return anyOutcomeIn(task, TaskOutcome.FROM_CACHE);
+    }
+
+    @Override
+    public boolean taskNoSource(String task) {
+        return anyOutcomeIn(task, TaskOutcome.NO_SOURCE);
+    }
+
+    // a FAILED task was executed, so it is considered as run
+    @Override
+    public boolean taskRun(String task) {
+        return anyOutcomeIn(task, TaskOutcome.SUCCESS, TaskOutcome.FAILED);
+    }
+
+    @Override
+    public boolean taskNotExecuted(String task) {
+        return outcomesOf(task).isEmpty();
+    }
+
+    @Override
+    public boolean taskSkipped(String task) {
+        return taskNotExecuted(task)
+                || anyOutcomeIn(task, TaskOutcome.UP_TO_DATE, TaskOutcome.FROM_CACHE, TaskOutcome.NO_SOURCE,
+                TaskOutcome.SKIPPED);
+    }
+}
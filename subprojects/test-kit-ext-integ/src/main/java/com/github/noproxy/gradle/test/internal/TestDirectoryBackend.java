@@ -0,0 +1,75 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.noproxy.gradle.test.internal;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
+
+/**
+ * Where the test directories of {@link AbstractTestDirectoryProvider} are stored, selected by system property
+ * {@code noproxy.testdir.backend}:
+ * <ul>
+ * <li>{@code disk}, the default: a new directory under the root of the provider</li>
+ * <li>{@code memory}: like disk, but the root is moved to a memory backed filesystem, {@code /dev/shm} or
+ * {@code noproxy.testdir.memoryRoot}, when there is one</li>
+ * <li>{@code pooled}: empty directories created ahead under the root, cleaned and reused after every test</li>
+ * </ul>
+ * Deleted directories go through the {@link BackgroundDeleter}. The time spent creating and deleting every test
+ * directory is reported by {@link TestDirectoryTimings}.
+ */
+public interface TestDirectoryBackend {
+    String BACKEND_PROPERTY = "noproxy.testdir.backend";
+
+    static TestDirectoryBackend selected() {
+        final String name = System.getProperty(BACKEND_PROPERTY, DiskTestDirectoryBackend.NAME);
+        switch (name) {
+            case DiskTestDirectoryBackend.NAME:
+                return DiskTestDirectoryBackend.SHARED;
+            case MemoryTestDirectoryBackend.NAME:
+                return MemoryTestDirectoryBackend.SHARED;
+            case PooledTestDirectoryBackend.NAME:
+                return PooledTestDirectoryBackend.SHARED;
+            default:
+                throw new IllegalArgumentException("unknown " + BACKEND_PROPERTY + " '" + name
+                        + "', expected disk, memory or pooled");
+        }
+    }
+
+    String getName();
+
+    /**
+     * @param root   the root of the provider
+     * @param prefix the relative path identifying the test, like {@code SomeSpec/someFeature}
+     * @return a new empty directory
+     */
+    File create(File root, String prefix);
+
+    /**
+     * Delete a directory created by this backend, or make it available again.
+     *
+     * @param root         the root the directory was created for
+     * @param beforeDelete given the content of the directory before it is deleted, maybe from another thread
+     * @param deleted      given the milliseconds a deletion in the background took, -1 when it gave up, from the
+     *                     deleting thread
+     */
+    void delete(File root, File dir, @Nullable Consumer<File> beforeDelete, @Nullable LongConsumer deleted)
+            throws IOException;
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.noproxy.gradle.test.internal;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Appends the time spent creating and deleting every test directory to a CSV report, one file per test worker and
+ * test run: {@code build/reports/test-directories/run-<run id>-worker-<id>.csv}, the directory can be changed by
+ * system property {@code noproxy.testdir.reportDir}. Worker ids grow across the builds of a daemon, the integration
+ * test task deletes the reports of earlier runs. The delete time is the time the test thread spent, -1 means the
+ * directory was kept.
+ * <p>
+ * Directories deleted by the {@link BackgroundDeleter} are reported again once they are gone, in
+ * {@code run-<run id>-worker-<id>-background.csv}: a delete time of -1 means the deletion gave up and left the directory in the
+ * trash, or left a pooled directory out of its pool.
+ */
+public class TestDirectoryTimings {
+    private static final String HEADER = "test,backend,createMillis,deleteMillis\n";
+    private static final String BACKGROUND_HEADER = "test,backend,deleteMillis\n";
+    private static final File REPORT_DIR = new File(System.getProperty("noproxy.testdir.reportDir",
+            "build/reports/test-directories"));
+    private static final String REPORT_NAME = "run-" + TestWorkers.getRunId() + "-worker-" + TestWorkers.getWorkerId();
+    private static final TestDirectoryTimings SHARED = new TestDirectoryTimings(
+            new File(REPORT_DIR, REPORT_NAME + ".csv"),
+            new File(REPORT_DIR, REPORT_NAME + "-background.csv"));
+    private final File report;
+    private final File backgroundReport;
+    private boolean started;
+    private boolean backgroundStarted;
+
+    TestDirectoryTimings(File report, File backgroundReport) {
+        this.report = report;
+        this.backgroundReport = backgroundReport;
+    }
+
+    public static TestDirectoryTimings shared() {
+        return SHARED;
+    }
+
+    private static String csv(String value) {
+        return value.contains(",") || value.contains("\"") ? "\"" + value.replace("\"", "\"\"") + "\"" : value;
+    }
+
+    private static void append(File file, @Nullable String header, String line) {
+        try {
+            if (header != null) {
+                // every test run starts a new report
+                Files.createDirectories(file.getParentFile().toPath());
+                Files.write(file.toPath(), header.getBytes(StandardCharsets.UTF_8));
+            }
+            Files.write(file.toPath(), line.getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    synchronized void record(String test, String backend, long createMillis, long deleteMillis) {
+        append(report, started ? null : HEADER, csv(test) + "," + backend + "," + createMillis + "," + deleteMillis + "\n");
+        started = true;
+    }
+
+    /**
+     * Called from the background deleter thread once the directory of the test is gone.
+     */
+    synchronized void recordBackgroundDelete(String test, String backend, long deleteMillis) {
+        append(backgroundReport, backgroundStarted ? null : BACKGROUND_HEADER, csv(test) + "," + backend + "," + deleteMillis + "\n");
+        backgroundStarted = true;
+    }
+}
@@ -20,6 +20,6 @@ import java.io.File;
 
 public class TestNameTestDirectoryProvider extends AbstractTestDirectoryProvider {
     public TestNameTestDirectoryProvider() {
-        root = new File("build/tmp/testfiles");
+        root = TestWorkers.scoped(new File("build/tmp/testfiles"));
     }
 }
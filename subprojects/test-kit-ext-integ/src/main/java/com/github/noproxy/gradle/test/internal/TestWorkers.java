@@ -0,0 +1,80 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.noproxy.gradle.test.internal;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+
+/**
+ * Isolation between test workers running at the same time.
+ * <p>
+ * Parallel mode is enabled by system property {@code noproxy.test.parallel}, which the integration test task sets when
+ * it forks more than one worker. In parallel mode every worker gets its own test directories, Gradle user home and
+ * daemons, so workers never wait on each other's locks or delete each other's files.
+ */
+public class TestWorkers {
+    private static final String PARALLEL_PROPERTY = "noproxy.test.parallel";
+    // set by Gradle in every forked test worker
+    private static final String WORKER_ID_PROPERTY = "org.gradle.test.worker";
+    private static final String DEFAULT_WORKER_ID = "0";
+    // set by the integration test task, shared by all its workers
+    private static final String RUN_ID_PROPERTY = "noproxy.test.runId";
+    private static final String TEST_KIT_DIR = "build/tmp/test-kit";
+
+    public static boolean isParallel() {
+        return Boolean.getBoolean(PARALLEL_PROPERTY);
+    }
+
+    public static String getWorkerId() {
+        return System.getProperty(WORKER_ID_PROPERTY, DEFAULT_WORKER_ID);
+    }
+
+    /**
+     * @return the id of the test run, the start time of the test task, or of this JVM when run outside of Gradle
+     */
+    public static String getRunId() {
+        final String runId = System.getProperty(RUN_ID_PROPERTY);
+        return runId != null ? runId : String.valueOf(ManagementFactory.getRuntimeMXBean().getStartTime());
+    }
+
+    /**
+     * @return the per worker child of root in parallel mode, otherwise root itself
+     */
+    public static File scoped(File root) {
+        if (isParallel()) {
+            return new File(root, "worker-" + getWorkerId());
+        }
+        return root;
+    }
+
+    /**
+     * @return the test-kit directory for in-process builds, or null to keep the TestKit default when not parallel
+     */
+    @Nullable
+    public static File getInProcessTestKitDir() {
+        if (isParallel()) {
+            return new File(scoped(new File(TEST_KIT_DIR)), "in-process").getAbsoluteFile();
+        }
+        return null;
+    }
+
+    public static File getDaemonPoolDir() {
+        return scoped(new File(System.getProperty("noproxy.daemon.testKitDir", TEST_KIT_DIR)));
+    }
+}
@@ -0,0 +1,280 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.noproxy.gradle.test.internal;
+
+import com.github.noproxy.gradle.test.api.ZipIntegrator;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.ZipException;
+
+/**
+ * Writes a zip archive from entries compressed beforehand, so entries can be compressed in parallel and still be
+ * written in order. Entries have no extra fields nor file attributes, and all share the same modification time.
+ * <p>
+ * Zip64 is not supported, archives are limited to 65535 entries of 4GB.
+ */
+class ZipAssembler {
+    /**
+     * The earliest time a zip can hold is 1980-01-01, one month is added to be safe from time zones, like Gradle
+     * does for reproducible archives. Zip times are local, so the calendar is local too.
+     */
+    static final long REPRODUCIBLE_TIME = new GregorianCalendar(1980, Calendar.FEBRUARY, 1, 0, 0, 0).getTimeInMillis();
+    private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+    private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+    private static final int END_SIGNATURE = 0x06054b50;
+    private static final int VERSION = 20;
+    private static final int UTF8_FLAG = 1 << 11;
+    private static final int STORED = 0;
+    private static final int DEFLATED = 8;
+    private static final long MAX_SIZE = 0xFFFFFFFFL;
+    private static final int MAX_ENTRIES = 0xFFFF;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private final OutputStream out;
+    private final int dosTime;
+    private final int dosDate;
+    private final ByteArrayOutputStream centralDirectory = new ByteArrayOutputStream();
+    private final Set<String> names = new HashSet<>();
+    private long offset;
+    private int entries;
+
+    ZipAssembler(OutputStream out, long time) {
+        this.out = out;
+        final Calendar calendar = Calendar.getInstance();
+        calendar.setTimeInMillis(Math.max(time, REPRODUCIBLE_TIME));
+        this.dosDate = (calendar.get(Calendar.YEAR) - 1980) << 9
+                | (calendar.get(Calendar.MONTH) + 1) << 5
+                | calendar.get(Calendar.DAY_OF_MONTH);
+        this.dosTime = calendar.get(Calendar.HOUR_OF_DAY) << 11
+                | calendar.get(Calendar.MINUTE) << 5
+                | calendar.get(Calendar.SECOND) >> 1;
+    }
+
+    /**
+     * Compress an entry, it is safe to call concurrently for different entries.
+     */
+    static Compressed compress(Source source, ZipIntegrator.Compression compression) throws IOException {
+        if (compression == ZipIntegrator.Compression.STORED) {
+            return new Compressed(source, STORED, source.crc(), source.size(), source.size(), source.content);
+        }
+
+        final ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        final CRC32 crc = new CRC32();
+        long size = 0;
+        try (InputStream input = new CheckedInputStream(source.open(), crc);
+             DeflaterOutputStream deflating = new DeflaterOutputStream(compressed, deflater, BUFFER_SIZE)) {
+            final byte[] buffer = new byte[BUFFER_SIZE];
+            int read;
+            while ((read = input.read(buffer)) >= 0) {
+                deflating.write(buffer, 0, read);
+                size += read;
+            }
+        } finally {
+            deflater.end();
+        }
+        return new Compressed(source, DEFLATED, crc.getValue(), size, compressed.size(), compressed.toByteArray());
+    }
+
+    void add(Compressed entry) throws IOException {
+        if (!names.add(entry.source.name)) {
+            throw new ZipException("duplicate entry: " + entry.source.name);
+        }
+        if (++entries > MAX_ENTRIES || entry.size > MAX_SIZE || entry.compressedSize > MAX_SIZE || offset > MAX_SIZE) {
+            throw new ZipException("zip64 is not supported, too large at entry " + entry.source.name);
+        }
+
+        final byte[] name = entry.source.name.getBytes(StandardCharsets.UTF_8);
+        final long headerOffset = offset;
+
+        final ByteArrayOutputStream header = new ByteArrayOutputStream(30 + name.length);
+        writeInt(header, LOCAL_HEADER_SIGNATURE);
+        writeShort(header, VERSION);
+        writeEntryFields(header, entry, name);
+        header.write(name);
+        header.writeTo(out);
+        offset += header.size();
+
+        if (entry.data != null) {
+            out.write(entry.data);
+        } else {
+            Files.copy(entry.source.file, out);
+        }
+        offset += entry.compressedSize;
+
+        writeInt(centralDirectory, CENTRAL_HEADER_SIGNATURE);
+        writeShort(centralDirectory, VERSION);
+        writeShort(centralDirectory, VERSION);
+        writeEntryFields(centralDirectory, entry, name);
+        writeShort(centralDirectory, 0); // comment length
+        writeShort(centralDirectory, 0); // disk number
+        writeShort(centralDirectory, 0); // internal attributes
+        writeInt(centralDirectory, 0); // external attributes, no permissions
+        writeInt(centralDirectory, (int) headerOffset);
+        centralDirectory.write(name);
+    }
+
+    void finish() throws IOException {
+        final long centralDirectoryOffset = offset;
+        centralDirectory.writeTo(out);
+        if (offset + centralDirectory.size() > MAX_SIZE) {
+            throw new ZipException("zip64 is not supported, the archive is larger than 4GB");
+        }
+
+        final ByteArrayOutputStream end = new ByteArrayOutputStream(22);
+        writeInt(end, END_SIGNATURE);
+        writeShort(end, 0); // disk number
+        writeShort(end, 0); // disk of central directory
+        writeShort(end, entries);
+        writeShort(end, entries);
+        writeInt(end, centralDirectory.size());
+        writeInt(end, (int) centralDirectoryOffset);
+        writeShort(end, 0); // comment length
+        end.writeTo(out);
+        out.flush();
+    }
+
+    private void writeEntryFields(ByteArrayOutputStream header, Compressed entry, byte[] name) {
+        writeShort(header, UTF8_FLAG);
+        writeShort(header, entry.method);
+        writeShort(header, dosTime);
+        writeShort(header, dosDate);
+        writeInt(header, (int) entry.crc);
+        writeInt(header, (int) entry.compressedSize);
+        writeInt(header, (int) entry.size);
+        writeShort(header, name.length);
+        writeShort(header, 0); // extra length
+    }
+
+    private static void writeShort(ByteArrayOutputStream out, int value) {
+        out.write(value & 0xFF);
+        out.write((value >>> 8) & 0xFF);
+    }
+
+    private static void writeInt(ByteArrayOutputStream out, int value) {
+        writeShort(out, value & 0xFFFF);
+        writeShort(out, (value >>> 16) & 0xFFFF);
+    }
+
+    /**
+     * The content of an entry, either in memory or in a file which is streamed.
+     */
+    static final class Source {
+        private final String name;
+        @Nullable
+        private final byte[] content;
+        @Nullable
+        private final Path file;
+
+        private Source(String name, @Nullable byte[] content, @Nullable Path file) {
+            this.name = name;
+            this.content = content;
+            this.file = file;
+        }
+
+        static Source of(String path, byte[] content) {
+            return new Source(normalize(path), content, null);
+        }
+
+        static Source of(String path, Path file) {
+            return new Source(normalize(path), null, file);
+        }
+
+        static List<Source> sortedByName(List<Source> sources) {
+            final List<Source> sorted = new ArrayList<>(sources);
+            sorted.sort((first, second) -> first.name.compareTo(second.name));
+            return sorted;
+        }
+
+        private static String normalize(String path) {
+            return path.replace('\\', '/');
+        }
+
+        String getName() {
+            return name;
+        }
+
+        long size() throws IOException {
+            return content != null ? content.length : Files.size(file);
+        }
+
+        long crc() throws IOException {
+            final CRC32 crc = new CRC32();
+            if (content != null) {
+                crc.update(content);
+                return crc.getValue();
+            }
+            try (InputStream input = Files.newInputStream(file)) {
+                final byte[] buffer = new byte[BUFFER_SIZE];
+                int read;
+                while ((read = input.read(buffer)) >= 0) {
+                    crc.update(buffer, 0, read);
+                }
+            }
+            return crc.getValue();
+        }
+
+        InputStream open() throws IOException {
+            return content != null ? new ByteArrayInputStream(content) : Files.newInputStream(file);
+        }
+
+        void copyTo(OutputStream out) throws IOException {
+            if (content != null) {
+                out.write(content);
+            } else {
+                Files.copy(file, out);
+            }
+        }
+    }
+
+    static final class Compressed {
+        private final Source source;
+        private final int method;
+        private final long crc;
+        private final long size;
+        private final long compressedSize;
+        @Nullable
+        private final byte[] data;
+
+        private Compressed(Source source, int method, long crc, long size, long compressedSize,
+                           @Nullable byte[] data) {
+            this.source = source;
+            this.method = method;
+            this.crc = crc;
+            this.size = size;
+            this.compressedSize = compressedSize;
+            this.data = data;
+        }
+    }
+}